@@ -0,0 +1,17 @@
+package uk.org.webcompere.testgadgets;
+
+/**
+ * Similar to {@link java.util.function.Function} but allows exceptions to be thrown
+ * @param <T> the type of value received
+ * @param <R> the type of value returned
+ */
+@FunctionalInterface
+public interface ThrowingFunction<T, R> {
+    /**
+     * Applies the function to the given value
+     * @param value the value to receive
+     * @return the result
+     * @throws Exception on any error
+     */
+    R apply(T value) throws Exception;
+}
@@ -0,0 +1,16 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+/**
+ * How an asynchronous operation, metered by {@link Meter#wrapAsync}, completed
+ */
+public enum AsyncOutcome {
+    /**
+     * The operation completed normally
+     */
+    SUCCEEDED,
+
+    /**
+     * The operation completed exceptionally, or could not be started
+     */
+    FAILED
+}
@@ -0,0 +1,545 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import uk.org.webcompere.testgadgets.Box;
+import uk.org.webcompere.testgadgets.ThrowingBiConsumer;
+import uk.org.webcompere.testgadgets.ThrowingConsumer;
+import uk.org.webcompere.testgadgets.ThrowingFunction;
+import uk.org.webcompere.testgadgets.ThrowingRunnable;
+
+/**
+ * Launches multiple activities at the same time, running the workers on the executor provided
+ * by an {@link ExecutorFactory}. Construct via {@link Concurrently#using(ExecutorFactory)}.
+ */
+public class ConcurrentRunner {
+    /**
+     * The most workers {@link #executeInSteps(int, Step...)} can line up at each step
+     */
+    public static final int MAX_STEP_WORKERS = 65535;
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final ThreadLocal<Integer> CURRENT_WORKER = new ThreadLocal<>();
+
+    private final ExecutorFactory executorFactory;
+    private boolean failFast;
+    private Duration timeout;
+    private String workerNamePrefix;
+
+    /**
+     * Construct with the factory for the executor to run workers on
+     * @param executorFactory provides the executor for each run
+     */
+    public ConcurrentRunner(ExecutorFactory executorFactory) {
+        this.executorFactory = executorFactory;
+    }
+
+    /**
+     * Fluent setter to stop at the first error - the remaining workers are interrupted and the
+     * error is thrown without waiting for them to finish
+     * @return this
+     */
+    public ConcurrentRunner failFast() {
+        this.failFast = true;
+        return this;
+    }
+
+    /**
+     * Fluent setter to wait for all workers, collecting every error - this is the default
+     * @return this
+     */
+    public ConcurrentRunner collectAll() {
+        this.failFast = false;
+        return this;
+    }
+
+    /**
+     * Fluent setter of the longest to wait for a whole run. When the time is up, the workers still
+     * running are interrupted and an {@link AssertionError} is thrown
+     * @param timeout the time limit for each run
+     * @return this
+     */
+    public ConcurrentRunner timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Fluent setter to name the thread running each worker after the worker's index - e.g.
+     * <code>reader-3</code> - so profiler output and {@link Meter} threads can be tied back to the
+     * worker. The thread's own name is restored when the worker finishes, so threads from a pool
+     * can be used.
+     * @param workerNamePrefix the prefix of the names
+     * @return this
+     */
+    public ConcurrentRunner workerNames(String workerNamePrefix) {
+        this.workerNamePrefix = workerNamePrefix;
+        return this;
+    }
+
+    /**
+     * Which worker is running on the current thread
+     * @return the index of the worker, or empty if the current thread is not running a worker
+     */
+    public static OptionalInt currentWorker() {
+        Integer index = CURRENT_WORKER.get();
+        return index == null ? OptionalInt.empty() : OptionalInt.of(index);
+    }
+
+    /**
+     * Execute each of the given actions at (approximately) the same time during the test
+     * and return control when they're all done
+     * @param actions the actions to execute
+     */
+    public void executeTogether(ThrowingRunnable... actions) {
+        executeOver(Arrays.stream(actions), ThrowingRunnable::run);
+    }
+
+    /**
+     * Execute the same action multiple times at (approximately) the same time during the test
+     * and return control when all are done
+     * @param count the number of workers/repeats of the action
+     * @param action the action to perform
+     */
+    public void executeMultiple(int count, ThrowingRunnable action) {
+        executeOver(IntStream.range(0, count).boxed(), (i, j) -> action.run());
+    }
+
+    /**
+     * Execute the same action multiple times at (approximately) the same time during the test
+     * and return control when all are done
+     * @param count the number of workers/repeats of the action
+     * @param actionOnIndex the action to perform, which is also provided with which number action it is
+     */
+    public void executeMultiple(int count, ThrowingConsumer<Integer> actionOnIndex) {
+        executeOver(IntStream.range(0, count).boxed(), (i, index) -> actionOnIndex.accept(index));
+    }
+
+    /**
+     * Execute an action over the data in a stream, each instance run at (approximately) the same time
+     * during the test, returning control when everything is done
+     * @param data the data to pass to each action
+     * @param action the action to perform
+     * @param <T> the type of the data in the stream
+     */
+    public <T> void executeOver(Stream<T> data, ThrowingConsumer<T> action) {
+        executeOver(data, (val, index) -> action.accept(val));
+    }
+
+    /**
+     * Execute an action over the data in a stream, each instance run at (approximately) the same time
+     * during the test, returning control when everything is done
+     * @param data the data to pass to each action
+     * @param actionOnIndex the action to perform, which also receives the index in the stream of the item
+     *                      being processed
+     * @param <T> the type of the data in the stream
+     */
+    public <T> void executeOver(Stream<T> data, ThrowingBiConsumer<T, Integer> actionOnIndex) {
+        List<T> sourceData = data.collect(toList());
+
+        runWorkers(sourceData.size(), (index, run) -> actionOnIndex.accept(sourceData.get(index), index));
+    }
+
+    /**
+     * Apply a function to each item of data in a stream, each call run at (approximately) the same time
+     * during the test, returning control when everything is done
+     * @param data the data to pass to each call of the function
+     * @param function the function to call
+     * @param <T> the type of the data in the stream
+     * @param <R> the type of result
+     * @return the result of each call, in the order of the data in the stream
+     */
+    public <T, R> List<R> mapTogether(Stream<T> data, ThrowingFunction<T, R> function) {
+        List<T> sourceData = data.collect(toList());
+
+        // each worker writes only its own slot, so no locking is needed
+        Object[] results = new Object[sourceData.size()];
+        runWorkers(results.length, (index, run) -> results[index] = function.apply(sourceData.get(index)));
+
+        @SuppressWarnings("unchecked")
+        List<R> resultList = (List<R>) Arrays.asList(results);
+        return resultList;
+    }
+
+    /**
+     * Execute an action over the data in a stream, using a fixed number of workers, which all start at
+     * (approximately) the same time and then take items from the stream until it's exhausted. The stream
+     * is read lazily, so can be much larger than could fit in memory.
+     * @param data the data to pass to each action
+     * @param parallelism the number of workers
+     * @param action the action to perform
+     * @param <T> the type of the data in the stream
+     */
+    public <T> void executeOver(Stream<T> data, int parallelism, ThrowingConsumer<T> action) {
+        executeOver(data, parallelism, (val, index) -> action.accept(val));
+    }
+
+    /**
+     * Execute an action over the data in a stream, using a fixed number of workers, which all start at
+     * (approximately) the same time and then take items from the stream until it's exhausted. The stream
+     * is read lazily, so can be much larger than could fit in memory.
+     * @param data the data to pass to each action
+     * @param parallelism the number of workers
+     * @param actionOnIndex the action to perform, which also receives the index in the stream of the item
+     *                      being processed
+     * @param <T> the type of the data in the stream
+     */
+    public <T> void executeOver(Stream<T> data, int parallelism, ThrowingBiConsumer<T, Integer> actionOnIndex) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        Iterator<T> source = data.iterator();
+        AtomicInteger nextIndex = new AtomicInteger();
+
+        runWorkers(parallelism, (worker, run) -> {
+            Box<T> item = new Box<>();
+            int index;
+            while (!run.isStopped() && (index = takeNext(source, nextIndex, item)) != -1) {
+                try {
+                    actionOnIndex.accept(item.getValue(), index);
+                } catch (Throwable e) { // NOSONAR
+                    run.fail(index, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Execute a scenario of steps on multiple workers. The workers start together and perform each step
+     * in turn, waiting for all the others to finish each step before starting the next. This lines the
+     * workers up at every stage of a race - e.g. all read, then all write - without sleeps. A worker
+     * which fails performs no more steps, but does not hold up the others.<br>
+     * As the workers wait for each other, they must all be running at once - so an executor with fewer
+     * threads than workers, e.g. a fixed thread pool, can't be used. Such a pool is detected if it's a
+     * {@link ThreadPoolExecutor}, otherwise set a {@link #timeout(Duration)} to avoid waiting forever.
+     * @param workers the number of workers, at most {@link #MAX_STEP_WORKERS}
+     * @param steps the steps for each worker to perform, which receive the worker's index
+     * @throws IllegalArgumentException if there are too many workers, or the executor's pool is too small
+     * to run them all at once
+     */
+    public void executeInSteps(int workers, Step... steps) {
+        if (workers > MAX_STEP_WORKERS) {
+            throw new IllegalArgumentException(
+                    "Cannot execute more than " + MAX_STEP_WORKERS + " workers in steps: " + workers);
+        }
+        Phaser phaser = new Phaser(workers);
+
+        runWorkers(workers, true, (worker, run) -> {
+            try {
+                for (int step = 0; step < steps.length; step++) {
+                    if (step > 0 && (!awaitOtherWorkers(phaser) || run.isStopped())) {
+                        return;
+                    }
+                    steps[step].run(worker);
+                }
+            } catch (Throwable e) { // NOSONAR
+                // record the failure before releasing the others, so fail-fast stops them at the barrier
+                run.fail(worker, e);
+            } finally {
+                phaser.arriveAndDeregister();
+            }
+        }, phaser::arriveAndDeregister);
+    }
+
+    /**
+     * Wait at the barrier for the other workers
+     * @param phaser the barrier
+     * @return true if the workers should continue, false if the barrier was abandoned
+     * @throws InterruptedException on interruption, after abandoning the barrier
+     */
+    private static boolean awaitOtherWorkers(Phaser phaser) throws InterruptedException {
+        try {
+            return phaser.awaitAdvanceInterruptibly(phaser.arrive()) >= 0;
+        } catch (InterruptedException e) {
+            // having arrived, this worker can't deregister, so release the others
+            phaser.forceTermination();
+            throw e;
+        }
+    }
+
+    /**
+     * Start building a stress test which explores the interleavings of actors on some shared state
+     * @param stateFactory creates fresh state for each iteration
+     * @param <S> the type of the state
+     * @return an {@link Exploration} to add the actors to and run
+     */
+    public <S> Exploration<S> explore(Supplier<S> stateFactory) {
+        return new Exploration<>(this, stateFactory);
+    }
+
+    /**
+     * Run the actors of an exploration. Each actor has its own worker, which runs all the iterations.
+     * Between iterations, the last actor to finish observes the outcome and creates the next state.
+     */
+    <S, R> OutcomeReport<R> explore(
+            int iterations,
+            Supplier<S> stateFactory,
+            List<ThrowingConsumer<S>> actors,
+            long maxJitterNanos,
+            boolean yields,
+            Function<S, R> outcome) {
+        Iterations<S, R> barrier = new Iterations<>(actors.size(), iterations, stateFactory, outcome);
+
+        // the actors wait for each other, so an actor which fails, or never runs, must release the others
+        runWorkers(
+                actors.size(),
+                true,
+                (worker, run) -> {
+                    ThrowingConsumer<S> actor = actors.get(worker);
+                    try {
+                        while (awaitOtherWorkers(barrier) && !barrier.isTerminated()) {
+                            perturb(maxJitterNanos, yields);
+                            actor.accept(barrier.getState());
+                        }
+                    } catch (Throwable e) { // NOSONAR
+                        barrier.forceTermination();
+                        throw e;
+                    }
+                },
+                barrier::forceTermination);
+
+        return barrier.getReport();
+    }
+
+    /**
+     * Barrier between the iterations of an exploration - each phase after the first is an iteration,
+     * ended by observing its outcome
+     */
+    private static class Iterations<S, R> extends Phaser {
+        private final int iterations;
+        private final Supplier<S> stateFactory;
+        private final Function<S, R> outcome;
+        private final Map<R, Long> outcomes = new HashMap<>();
+        private S state;
+        private RuntimeException observationError;
+
+        Iterations(int actors, int iterations, Supplier<S> stateFactory, Function<S, R> outcome) {
+            super(actors);
+            this.iterations = iterations;
+            this.stateFactory = stateFactory;
+            this.outcome = outcome;
+        }
+
+        @Override
+        protected boolean onAdvance(int phase, int registeredParties) {
+            try {
+                if (phase > 0) {
+                    outcomes.merge(outcome.apply(state), 1L, Long::sum);
+                }
+                if (phase == iterations) {
+                    return true;
+                }
+                state = stateFactory.get();
+                return false;
+            } catch (RuntimeException e) {
+                observationError = e;
+                return true;
+            }
+        }
+
+        S getState() {
+            return state;
+        }
+
+        OutcomeReport<R> getReport() {
+            if (observationError != null) {
+                throw new AssertionError("Could not observe the outcome", observationError);
+            }
+            return new OutcomeReport<>(iterations, outcomes);
+        }
+    }
+
+    private static void perturb(long maxJitterNanos, boolean yields) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (maxJitterNanos > 0) {
+            long until = System.nanoTime() + random.nextLong(maxJitterNanos);
+            while (System.nanoTime() - until < 0) {
+                Thread.onSpinWait();
+            }
+        }
+        if (yields) {
+            for (int i = random.nextInt(3); i > 0; i--) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Run a soak test - keep calling the action on the given number of workers until the duration is up.
+     * The workers start together, and finish their current call after the deadline. Errors, including
+     * {@link AssertionError}s, do not stop the workers, but are counted in the report. Only a
+     * {@link VirtualMachineError} stops a worker, failing the run.
+     * @param duration how long to run for
+     * @param workers the number of workers
+     * @param action the action to perform, which receives the worker's index
+     * @return a {@link SoakReport} of the iterations and errors
+     */
+    public SoakReport runFor(Duration duration, int workers, ThrowingConsumer<Integer> action) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Workers must be at least 1: " + workers);
+        }
+        long[] iterations = new long[workers];
+        Map<Class<? extends Throwable>, LongAdder> errorCounts = new ConcurrentHashMap<>();
+        Map<Class<? extends Throwable>, Throwable> firstErrors = new ConcurrentHashMap<>();
+
+        // the first worker to start sets the clock running
+        AtomicLong startTime = new AtomicLong(NOT_STARTED);
+
+        runWorkers(workers, (worker, run) -> {
+            startTime.compareAndSet(NOT_STARTED, System.nanoTime());
+            long deadline = startTime.get() + duration.toNanos();
+            while (!run.isStopped() && System.nanoTime() - deadline < 0) {
+                iterations[worker]++;
+                try {
+                    action.accept(worker);
+                } catch (VirtualMachineError e) {
+                    throw e;
+                } catch (Throwable e) { // NOSONAR
+                    errorCounts.computeIfAbsent(e.getClass(), type -> new LongAdder()).increment();
+                    firstErrors.putIfAbsent(e.getClass(), e);
+                }
+            }
+        });
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime.get());
+
+        return new SoakReport(
+                iterations,
+                errorCounts.entrySet().stream()
+                        .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().sum())),
+                firstErrors,
+                elapsed);
+    }
+
+    private static <T> int takeNext(Iterator<T> source, AtomicInteger nextIndex, Box<T> item) {
+        synchronized (source) {
+            if (!source.hasNext()) {
+                return -1;
+            }
+            item.setValue(source.next());
+            return nextIndex.getAndIncrement();
+        }
+    }
+
+    /**
+     * The body of a worker
+     */
+    @FunctionalInterface
+    private interface Worker {
+        /**
+         * Do the work
+         * @param index the index of the worker
+         * @param run the run the worker is part of
+         * @throws Exception on any error - this is recorded as a failure of the worker
+         */
+        void execute(int index, WorkerRun run) throws Exception;
+    }
+
+    /**
+     * Run workers on the executor, lining them up to start together, and wait for them all to finish,
+     * failing according to the settings of this runner
+     * @param workers the number of workers
+     * @param worker the body of each worker
+     */
+    private void runWorkers(int workers, Worker worker) {
+        runWorkers(workers, false, worker, () -> {});
+    }
+
+    /**
+     * Run workers on the executor
+     * @param workers the number of workers
+     * @param allAtOnce true if the workers wait for each other, so must all be running at the same time
+     * @param worker the body of each worker
+     * @param notRun called for each worker whose body will never run - e.g. to release the others from
+     * a barrier they're waiting at
+     */
+    private void runWorkers(int workers, boolean allAtOnce, Worker worker, Runnable notRun) {
+        WorkerRun run = new WorkerRun(workers, failFast);
+
+        Executor executor = executorFactory.create(workers);
+        try {
+            if (allAtOnce) {
+                checkCanRunAtOnce(executor, workers);
+            }
+            for (int i = 0; i < workers; i++) {
+                int index = i;
+                submit(executor, () -> executeAWorker(worker, run, index, notRun), run, index, notRun);
+            }
+
+            run.startAndAwait(timeout);
+        } finally {
+            executorFactory.release(executor);
+        }
+
+        run.throwIfFailed();
+    }
+
+    private static void checkCanRunAtOnce(Executor executor, int workers) {
+        if (executor instanceof ThreadPoolExecutor
+                && ((ThreadPoolExecutor) executor).getMaximumPoolSize() < workers) {
+            throw new IllegalArgumentException("The executor's pool of "
+                    + ((ThreadPoolExecutor) executor).getMaximumPoolSize()
+                    + " threads is too small to run " + workers + " workers at once");
+        }
+    }
+
+    private static void submit(Executor executor, Runnable worker, WorkerRun run, int index, Runnable notRun) {
+        try {
+            executor.execute(worker);
+        } catch (RejectedExecutionException e) {
+            // the worker will never run, so it's finished already
+            run.fail(index, e);
+            notRun.run();
+            run.end(index);
+        }
+    }
+
+    private void executeAWorker(Worker worker, WorkerRun run, int index, Runnable notRun) {
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        if (workerNamePrefix != null) {
+            thread.setName(workerNamePrefix + "-" + index);
+        }
+        CURRENT_WORKER.set(index);
+
+        run.begin(index);
+        boolean executed = false;
+        try {
+            run.awaitStart();
+            if (!run.isStopped()) {
+                executed = true;
+                worker.execute(index, run);
+            }
+        } catch (Throwable e) { // NOSONAR
+            run.fail(index, e);
+        } finally {
+            if (!executed) {
+                notRun.run();
+            }
+            CURRENT_WORKER.remove();
+            thread.setName(threadName);
+            run.end(index);
+        }
+    }
+}
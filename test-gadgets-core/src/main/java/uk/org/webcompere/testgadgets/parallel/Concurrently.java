@@ -1,22 +1,49 @@
 package uk.org.webcompere.testgadgets.parallel;
 
-import static java.util.stream.Collectors.toList;
-
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.time.Duration;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.stream.IntStream;
+import java.util.OptionalInt;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import uk.org.webcompere.testgadgets.ThrowingBiConsumer;
 import uk.org.webcompere.testgadgets.ThrowingConsumer;
+import uk.org.webcompere.testgadgets.ThrowingFunction;
 import uk.org.webcompere.testgadgets.ThrowingRunnable;
 
 /**
- * Helpers for launching multiple activities at the same time for concurrent testing
+ * Helpers for launching multiple activities at the same time for concurrent testing. By default each
+ * activity runs on its own new thread - use {@link #using(ExecutorFactory)} to run them another way.
  */
 public class Concurrently {
+    private static final ConcurrentRunner DEFAULT_RUNNER = new ConcurrentRunner(ExecutorFactory.threadPerTask());
+
+    /**
+     * Create a runner with the default thread-per-task behaviour, to configure further - e.g. with
+     * {@link ConcurrentRunner#failFast()} or {@link ConcurrentRunner#timeout(Duration)}
+     * @return a new {@link ConcurrentRunner} with the same operations as this class
+     */
+    public static ConcurrentRunner runner() {
+        return using(ExecutorFactory.threadPerTask());
+    }
+
+    /**
+     * Which worker is running on the current thread - for use within the actions
+     * @return the index of the worker, or empty if the current thread is not running a worker
+     */
+    public static OptionalInt currentWorker() {
+        return ConcurrentRunner.currentWorker();
+    }
+
+    /**
+     * Create a runner which runs its workers on executors from the given factory
+     * @param executorFactory the source of executors - e.g. {@link ExecutorFactory#virtualThreads()}, or
+     * {@link ExecutorFactory#of(Executor)} for an existing executor
+     * @return a {@link ConcurrentRunner} with the same operations as this class
+     */
+    public static ConcurrentRunner using(ExecutorFactory executorFactory) {
+        return new ConcurrentRunner(executorFactory);
+    }
 
     /**
      * Execute each of the given actions at (approximately) the same time during the test
@@ -24,7 +51,7 @@ public class Concurrently {
      * @param actions the actions to execute
      */
     public static void executeTogether(ThrowingRunnable... actions) {
-        executeOver(Arrays.stream(actions), ThrowingRunnable::run);
+        DEFAULT_RUNNER.executeTogether(actions);
     }
 
     /**
@@ -34,7 +61,7 @@ public class Concurrently {
      * @param action the action to perform
      */
     public static void executeMultiple(int count, ThrowingRunnable action) {
-        executeOver(IntStream.range(0, count).boxed(), (i, j) -> action.run());
+        DEFAULT_RUNNER.executeMultiple(count, action);
     }
 
     /**
@@ -44,7 +71,7 @@ public class Concurrently {
      * @param actionOnIndex the action to perform, which is also provided with which number action it is
      */
     public static void executeMultiple(int count, ThrowingConsumer<Integer> actionOnIndex) {
-        executeOver(IntStream.range(0, count).boxed(), (i, index) -> actionOnIndex.accept(index));
+        DEFAULT_RUNNER.executeMultiple(count, actionOnIndex);
     }
 
     /**
@@ -55,7 +82,7 @@ public class Concurrently {
      * @param <T> the type of the data in the stream
      */
     public static <T> void executeOver(Stream<T> data, ThrowingConsumer<T> action) {
-        executeOver(data, (val, index) -> action.accept(val));
+        DEFAULT_RUNNER.executeOver(data, action);
     }
 
     /**
@@ -67,48 +94,83 @@ public class Concurrently {
      * @param <T> the type of the data in the stream
      */
     public static <T> void executeOver(Stream<T> data, ThrowingBiConsumer<T, Integer> actionOnIndex) {
-        List<T> sourceData = data.collect(toList());
-        CountDownLatch startFlag = new CountDownLatch(1);
-        CountDownLatch everythingFinished = new CountDownLatch(sourceData.size());
-        List<Exception> errors = Collections.synchronizedList(new LinkedList<>());
-
-        for (int i = 0; i < sourceData.size(); i++) {
-            int index = i;
-            new Thread(() -> executeAnAction(actionOnIndex, sourceData, startFlag, everythingFinished, errors, index))
-                    .start();
-        }
-
-        startAndWaitForTheThreads(startFlag, everythingFinished);
-
-        if (!errors.isEmpty()) {
-            throw new AssertionError("There were errors in the worker threads: " + errors);
-        }
+        DEFAULT_RUNNER.executeOver(data, actionOnIndex);
+    }
+
+    /**
+     * Apply a function to each item of data in a stream, each call run at (approximately) the same time
+     * during the test, returning control when everything is done
+     * @param data the data to pass to each call of the function
+     * @param function the function to call
+     * @param <T> the type of the data in the stream
+     * @param <R> the type of result
+     * @return the result of each call, in the order of the data in the stream
+     */
+    public static <T, R> List<R> mapTogether(Stream<T> data, ThrowingFunction<T, R> function) {
+        return DEFAULT_RUNNER.mapTogether(data, function);
+    }
+
+    /**
+     * Execute an action over the data in a stream, using a fixed number of workers, which all start at
+     * (approximately) the same time and then take items from the stream until it's exhausted. The stream
+     * is read lazily, so can be much larger than could fit in memory.
+     * @param data the data to pass to each action
+     * @param parallelism the number of workers
+     * @param action the action to perform
+     * @param <T> the type of the data in the stream
+     */
+    public static <T> void executeOver(Stream<T> data, int parallelism, ThrowingConsumer<T> action) {
+        DEFAULT_RUNNER.executeOver(data, parallelism, action);
     }
 
-    private static <T> void executeAnAction(
-            ThrowingBiConsumer<T, Integer> actionOnIndex,
-            List<T> sourceData,
-            CountDownLatch startFlag,
-            CountDownLatch everythingFinished,
-            List<Exception> errors,
-            int index) {
-        try {
-            startFlag.await();
-
-            actionOnIndex.accept(sourceData.get(index), index);
-        } catch (Exception e) {
-            errors.add(e);
-        } finally {
-            everythingFinished.countDown();
-        }
+    /**
+     * Execute an action over the data in a stream, using a fixed number of workers, which all start at
+     * (approximately) the same time and then take items from the stream until it's exhausted. The stream
+     * is read lazily, so can be much larger than could fit in memory.
+     * @param data the data to pass to each action
+     * @param parallelism the number of workers
+     * @param actionOnIndex the action to perform, which also receives the index in the stream of the item
+     *                      being processed
+     * @param <T> the type of the data in the stream
+     */
+    public static <T> void executeOver(Stream<T> data, int parallelism, ThrowingBiConsumer<T, Integer> actionOnIndex) {
+        DEFAULT_RUNNER.executeOver(data, parallelism, actionOnIndex);
     }
 
-    private static void startAndWaitForTheThreads(CountDownLatch startFlag, CountDownLatch everythingFinished) {
-        try {
-            startFlag.countDown();
-            everythingFinished.await();
-        } catch (Exception threadException) {
-            throw new AssertionError("Error awaiting the thread completion");
-        }
+    /**
+     * Execute a scenario of steps on multiple workers. The workers start together and perform each step
+     * in turn, waiting for all the others to finish each step before starting the next. This lines the
+     * workers up at every stage of a race - e.g. all read, then all write - without sleeps. A worker
+     * which fails performs no more steps, but does not hold up the others.
+     * @param workers the number of workers, at most {@link ConcurrentRunner#MAX_STEP_WORKERS}
+     * @param steps the steps for each worker to perform, which receive the worker's index
+     * @see ConcurrentRunner#executeInSteps(int, Step...)
+     */
+    public static void executeInSteps(int workers, Step... steps) {
+        DEFAULT_RUNNER.executeInSteps(workers, steps);
+    }
+
+    /**
+     * Start building a stress test which explores the interleavings of actors on some shared state
+     * @param stateFactory creates fresh state for each iteration
+     * @param <S> the type of the state
+     * @return an {@link Exploration} to add the actors to and run
+     */
+    public static <S> Exploration<S> explore(Supplier<S> stateFactory) {
+        return DEFAULT_RUNNER.explore(stateFactory);
+    }
+
+    /**
+     * Run a soak test - keep calling the action on the given number of workers until the duration is up.
+     * The workers start together, and finish their current call after the deadline. Errors, including
+     * {@link AssertionError}s, do not stop the workers, but are counted in the report. Only a
+     * {@link VirtualMachineError} stops a worker, failing the run.
+     * @param duration how long to run for
+     * @param workers the number of workers
+     * @param action the action to perform, which receives the worker's index
+     * @return a {@link SoakReport} of the iterations and errors
+     */
+    public static SoakReport runFor(Duration duration, int workers, ThrowingConsumer<Integer> action) {
+        return DEFAULT_RUNNER.runFor(duration, workers, action);
     }
 }
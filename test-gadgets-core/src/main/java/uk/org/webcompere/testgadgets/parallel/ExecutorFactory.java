@@ -0,0 +1,111 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provides the {@link Executor} which runs the workers of a {@link ConcurrentRunner}. The default
+ * is to start a new platform thread per worker, but any executor can be plugged in, including a
+ * virtual-thread-per-task executor where the JDK supports it (21+).
+ */
+@FunctionalInterface
+public interface ExecutorFactory {
+    /**
+     * Create (or supply) the executor for a run
+     * @param workers the number of workers the run is about to submit
+     * @return the executor to submit the workers to
+     */
+    Executor create(int workers);
+
+    /**
+     * Called when the run is finished with the executor. Override this to tidy up an executor
+     * that was created especially for the run
+     * @param executor the executor returned by {@link #create(int)}
+     */
+    default void release(Executor executor) {
+        // nothing to release by default
+    }
+
+    /**
+     * The default - a new platform thread for each worker
+     * @return a factory which starts a new thread per worker
+     */
+    static ExecutorFactory threadPerTask() {
+        return workers -> command -> new Thread(command).start();
+    }
+
+    /**
+     * A new thread for each worker, from the given factory - e.g. a {@link WorkerThreadFactory}
+     * @param threadFactory creates the threads
+     * @return a factory which starts a new thread per worker
+     */
+    static ExecutorFactory threadPerTask(ThreadFactory threadFactory) {
+        return workers -> command -> threadFactory.newThread(command).start();
+    }
+
+    /**
+     * Use an existing executor. The executor is not shut down after the run, so can be reused
+     * @param executor the executor to run workers on
+     * @return a factory which always provides the executor
+     */
+    static ExecutorFactory of(Executor executor) {
+        return workers -> executor;
+    }
+
+    /**
+     * Use a virtual thread per worker. This allows very large numbers of workers without running
+     * out of native threads
+     * @return a factory which creates a virtual-thread-per-task executor for each run
+     * @throws UnsupportedOperationException if the JDK does not support virtual threads
+     */
+    static ExecutorFactory virtualThreads() {
+        Method factoryMethod = findVirtualThreadFactoryMethod()
+                .orElseThrow(() -> new UnsupportedOperationException("Virtual threads are not supported by this JDK"));
+        return new ExecutorFactory() {
+            @Override
+            public Executor create(int workers) {
+                try {
+                    return (Executor) factoryMethod.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Cannot create virtual thread executor", e);
+                }
+            }
+
+            @Override
+            public void release(Executor executor) {
+                if (executor instanceof ExecutorService) {
+                    ((ExecutorService) executor).shutdown();
+                }
+            }
+        };
+    }
+
+    /**
+     * Use a virtual thread per worker when the JDK supports it, otherwise a platform thread per worker
+     * @return the best available thread-per-task factory
+     */
+    static ExecutorFactory virtualThreadsIfAvailable() {
+        return isVirtualThreadsAvailable() ? virtualThreads() : threadPerTask();
+    }
+
+    /**
+     * Are virtual threads available on this JDK?
+     * @return true if {@link #virtualThreads()} can be used
+     */
+    static boolean isVirtualThreadsAvailable() {
+        return findVirtualThreadFactoryMethod().isPresent();
+    }
+
+    private static Optional<Method> findVirtualThreadFactoryMethod() {
+        // looked up reflectively, as this library is built for JDK 11
+        try {
+            return Optional.of(Executors.class.getMethod("newVirtualThreadPerTaskExecutor"));
+        } catch (NoSuchMethodException e) {
+            return Optional.empty();
+        }
+    }
+}
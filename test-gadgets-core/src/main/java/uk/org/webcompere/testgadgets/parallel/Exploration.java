@@ -0,0 +1,81 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import uk.org.webcompere.testgadgets.ThrowingConsumer;
+
+/**
+ * Builder of a stress test which explores the interleavings of some actors. Each iteration creates
+ * fresh state, runs the actors on it together, and then observes the outcome. The frequency of each
+ * outcome is reported, so rare interleavings which produce unexpected outcomes can be found. The
+ * actors run on the same threads for every iteration, so many iterations can run quickly.
+ * Construct via {@link ConcurrentRunner#explore(Supplier)}.
+ * @param <S> the type of the state the actors share
+ */
+public class Exploration<S> {
+    private final ConcurrentRunner runner;
+    private final Supplier<S> stateFactory;
+    private final List<ThrowingConsumer<S>> actors = new ArrayList<>();
+    private Duration maxJitter = Duration.ZERO;
+    private boolean yields;
+
+    Exploration(ConcurrentRunner runner, Supplier<S> stateFactory) {
+        this.runner = runner;
+        this.stateFactory = stateFactory;
+    }
+
+    /**
+     * Add an actor - each actor runs on its own worker
+     * @param actor the action to perform on the state in each iteration
+     * @return this
+     */
+    public Exploration<S> actor(ThrowingConsumer<S> actor) {
+        actors.add(actor);
+        return this;
+    }
+
+    /**
+     * Fluent setter of random jitter - each actor waits a random time up to this before acting, to
+     * vary which actor goes first
+     * @param maxJitter the longest to wait
+     * @return this
+     */
+    public Exploration<S> jitter(Duration maxJitter) {
+        this.maxJitter = maxJitter;
+        return this;
+    }
+
+    /**
+     * Fluent setter of yield injection - each actor yields its thread a random number of times
+     * before acting
+     * @param yields whether to yield
+     * @return this
+     */
+    public Exploration<S> yields(boolean yields) {
+        this.yields = yields;
+        return this;
+    }
+
+    /**
+     * Run the exploration. The actors wait for each other between iterations, so must all be running at
+     * once - see {@link ConcurrentRunner#executeInSteps(int, Step...)} for the limits this puts on the executor
+     * @param iterations the number of times to run the actors
+     * @param outcome the function to observe the outcome from the state, after the actors have run -
+     *                e.g. a tuple of the results of the actors
+     * @param <R> the type of outcome
+     * @return the report of how often each outcome occurred
+     * @throws IllegalArgumentException if the executor's pool is too small to run all the actors at once
+     */
+    public <R> OutcomeReport<R> run(int iterations, Function<S, R> outcome) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be at least 1: " + iterations);
+        }
+        if (actors.isEmpty()) {
+            throw new IllegalStateException("No actors to explore");
+        }
+        return runner.explore(iterations, stateFactory, actors, maxJitter.toNanos(), yields, outcome);
+    }
+}
@@ -0,0 +1,250 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import uk.org.webcompere.testgadgets.GenericThrowingCallable;
+import uk.org.webcompere.testgadgets.GenericThrowingRunnable;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventLog;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventRetention;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventStatistics;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventTracking;
+import uk.org.webcompere.testgadgets.parallel.statistics.FakeTimeSource;
+import uk.org.webcompere.testgadgets.parallel.statistics.TimeSource;
+
+/**
+ * A meter which tracks events by a logical key - e.g. a request ID, partition or connection - rather
+ * than by {@link Thread} like {@link Meter}. This suits work done on pooled or virtual threads, or in
+ * asynchronous callbacks. Starting an event returns an {@link Event}, which can be ended on any thread,
+ * so events for the same key may overlap.<br>
+ * Each event is recorded in its key's log when it ends, under a lock on that log, so keys don't contend
+ * with each other. Events still running are not included in the statistics, so calculate them once the
+ * metered work has finished.
+ * @param <K> the type of key
+ */
+public class KeyedMeter<K> {
+    private EventTracking<K> eventTracking;
+    private TimeSource timeSource;
+    private Map<K, Event> latestEvents = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a meter which times events in nanoseconds
+     */
+    public KeyedMeter() {
+        this(TimeSource.nanos());
+    }
+
+    /**
+     * Construct a meter with a specific clock - e.g. a {@link FakeTimeSource}
+     * @param timeSource the clock to time events with
+     */
+    public KeyedMeter(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        eventTracking = new EventTracking<>(timeSource);
+    }
+
+    /**
+     * Limit how many raw events are kept per key, so memory stays flat during a long soak test.
+     * Call before any events are recorded
+     * @param retention the {@link EventRetention} for each key's log
+     * @return this for fluent calls
+     * @throws IllegalStateException if events have already been recorded
+     */
+    public KeyedMeter<K> withRetention(EventRetention retention) {
+        if (eventTracking.getChannelCount() > 0) {
+            throw new IllegalStateException("Cannot change the retention once events have been recorded");
+        }
+        eventTracking = new EventTracking<>(timeSource, retention);
+        return this;
+    }
+
+    /**
+     * An event which has started, and can be ended from any thread
+     */
+    public static final class Event {
+        private final EventLog log;
+        private final long start;
+        private final TimeSource timeSource;
+        private final Object key;
+        private final Map<?, Event> latestEvents;
+        private boolean ended;
+
+        private Event(EventLog log, long start, TimeSource timeSource, Object key, Map<?, Event> latestEvents) {
+            this.log = log;
+            this.start = start;
+            this.timeSource = timeSource;
+            this.key = key;
+            this.latestEvents = latestEvents;
+        }
+
+        /**
+         * Register that the event has ended
+         * @throws IllegalStateException if the event has already ended
+         */
+        public void end() {
+            if (!endIfRunning()) {
+                throw new IllegalStateException("Event has already ended");
+            }
+        }
+
+        private boolean endIfRunning() {
+            long now = timeSource.now();
+            synchronized (log) {
+                if (ended) {
+                    return false;
+                }
+                ended = true;
+                log.addEvent(start, now);
+            }
+
+            // only forget the key if no later event has replaced this one
+            latestEvents.remove(key, this);
+            return true;
+        }
+    }
+
+    /**
+     * Register that an event has started for a key
+     * @param key the key of the event
+     * @return the {@link Event} to end when the event is done
+     */
+    public Event startEvent(K key) {
+        Event event = new Event(eventTracking.register(key), timeSource.now(), timeSource, key, latestEvents);
+        latestEvents.put(key, event);
+        return event;
+    }
+
+    /**
+     * Register that the latest event for a key has ended - for keys whose events don't overlap
+     * @param key the key of the event
+     * @throws IndexOutOfBoundsException if the latest event for the key is not running
+     */
+    public void endEvent(K key) {
+        Event event = latestEvents.get(key);
+        if (event == null || !event.endIfRunning()) {
+            throw new IndexOutOfBoundsException("End provided for channel with no start");
+        }
+    }
+
+    /**
+     * Record an event which has already ended - e.g. where the outcome, which decides the key, is only
+     * known at the end
+     * @param key the key of the event
+     * @param start the start time, from the same {@link TimeSource} as the meter
+     * @param end the end time
+     */
+    public void addEvent(K key, long start, long end) {
+        EventLog log = eventTracking.register(key);
+        synchronized (log) {
+            log.addEvent(start, end);
+        }
+    }
+
+    /**
+     * Do an event recording the start/end automatically
+     * @param key the key of the event
+     * @param event the <code>void</code> function to wrap
+     * @param <E> the type of exception thrown
+     * @throws E as thrown by event - may be {@link RuntimeException}
+     */
+    public <E extends Exception> void wrapEvent(K key, GenericThrowingRunnable<E> event) throws E {
+        wrapEvent(key, event.asCallable());
+    }
+
+    /**
+     * Do an event, recording the start/end automatically
+     * @param key the key of the event
+     * @param event the function to wrap
+     * @param <T> the type of value returned
+     * @param <E> exception type
+     * @return the return of the function
+     * @throws E as thrown by event - may be {@link RuntimeException}
+     */
+    public <T, E extends Exception> T wrapEvent(K key, GenericThrowingCallable<T, E> event) throws E {
+        Event started = startEvent(key);
+        try {
+            return event.call();
+        } finally {
+            started.end();
+        }
+    }
+
+    /**
+     * How many keys have an event running which can be ended by {@link #endEvent(Object)}
+     * @return the number of keys tracked for ending by key
+     */
+    int getRunningKeyCount() {
+        return latestEvents.size();
+    }
+
+    /**
+     * The keys which have had events
+     * @return a copy of the set of keys
+     */
+    public Set<K> getKeys() {
+        return eventTracking.getChannels();
+    }
+
+    /**
+     * How many keys were involved
+     * @return the total number of keys seen
+     */
+    public int getKeyCount() {
+        return eventTracking.getChannelCount();
+    }
+
+    /**
+     * Calculate the statistics for the events so far
+     * @return the {@link EventStatistics} for working out utilisation etc
+     */
+    public EventStatistics<K> calculateStatistics() {
+        return eventTracking.calculateStatistics();
+    }
+
+    /**
+     * Calculate the statistics for the events so far, including throughput, concurrency and utilization
+     * in each fixed window of time
+     * @param window the length of each window - e.g. 100ms
+     * @return the {@link EventStatistics} with {@link EventStatistics#getWindows()} populated
+     */
+    public EventStatistics<K> calculateStatistics(Duration window) {
+        return eventTracking.calculateStatistics(window);
+    }
+
+    /**
+     * Write the events out as a Chrome Trace Event JSON file, with each key as a track, to open in Perfetto
+     * or <code>chrome://tracing</code>. Do this once the metered work is done
+     * @param writer the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        eventTracking.writeChromeTrace(writer);
+    }
+
+    /**
+     * Write the events out in a compact binary format - see {@link EventTracking#writeBinary(OutputStream)}
+     * @param output the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeBinary(OutputStream output) throws IOException {
+        eventTracking.writeBinary(output);
+    }
+
+    /**
+     * Clock the start point
+     */
+    public void start() {
+        eventTracking.start();
+    }
+
+    /**
+     * Clock the stop point
+     */
+    public void stop() {
+        eventTracking.stop();
+    }
+}
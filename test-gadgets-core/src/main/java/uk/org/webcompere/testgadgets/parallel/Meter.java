@@ -1,10 +1,22 @@
 package uk.org.webcompere.testgadgets.parallel;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import uk.org.webcompere.testgadgets.GenericThrowingCallable;
 import uk.org.webcompere.testgadgets.GenericThrowingRunnable;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventLog;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventRetention;
 import uk.org.webcompere.testgadgets.parallel.statistics.EventStatistics;
 import uk.org.webcompere.testgadgets.parallel.statistics.EventTracking;
+import uk.org.webcompere.testgadgets.parallel.statistics.FakeTimeSource;
+import uk.org.webcompere.testgadgets.parallel.statistics.LiveCounters;
+import uk.org.webcompere.testgadgets.parallel.statistics.MeterSnapshot;
+import uk.org.webcompere.testgadgets.parallel.statistics.TimeSource;
 
 /**
  * A meter can be used to watch a concurrent process. By making each worker in the process call
@@ -14,10 +26,76 @@ import uk.org.webcompere.testgadgets.parallel.statistics.EventTracking;
  * total utilizations.<br>
  * For utilizations, the start and end time are taken as the earliest known start and end, but calling
  * {@link Meter#start()} before starting the test will set a start point, and calling {@link Meter#stop()}
- * after the operations are all complete will set an end point.
+ * after the operations are all complete will set an end point.<br>
+ * Within an event, {@link Meter#beginWait()} and {@link Meter#endWait()} mark time spent waiting, e.g. on a
+ * lock, rather than working, so the statistics can tell contention from work.<br>
+ * Each thread records its events into its own log, found via a {@link ThreadLocal}, so metering adds
+ * very little to the operations being measured. The logs are only combined when the statistics are
+ * calculated, which should be done once the metered threads have finished.
  */
 public class Meter {
-    private EventTracking<Thread> eventTracking = new EventTracking<>();
+    private EventTracking<Thread> eventTracking;
+    private TimeSource timeSource;
+    private ThreadLocal<EventLog> threadLog = new ThreadLocal<>();
+    private KeyedMeter<AsyncOutcome> asyncEvents;
+    private LiveCounters liveCounters;
+
+    /**
+     * Construct a meter which times events in nanoseconds
+     */
+    public Meter() {
+        this(TimeSource.nanos());
+    }
+
+    /**
+     * Construct a meter with a specific clock - e.g. a {@link FakeTimeSource}
+     * @param timeSource the clock to time events with
+     */
+    public Meter(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        eventTracking = new EventTracking<>(timeSource);
+        asyncEvents = new KeyedMeter<>(timeSource);
+    }
+
+    /**
+     * Fluent setter to limit how many raw events are kept per thread, so memory stays flat during a long
+     * soak test. The counts, latencies and utilizations stay exact. Call this before any events start
+     * @param retention the {@link EventRetention} for each thread's log
+     * @return this
+     * @throws IllegalStateException if events have already been recorded
+     */
+    public Meter withRetention(EventRetention retention) {
+        if (eventTracking.getChannelCount() > 0) {
+            throw new IllegalStateException("Cannot change the retention once events have been recorded");
+        }
+        asyncEvents.withRetention(retention);
+        eventTracking = new EventTracking<>(timeSource, retention);
+        return this;
+    }
+
+    /**
+     * Fluent setter to keep live counters of the events as they happen, so {@link #snapshot()} can
+     * be polled while the test is running. Call this before any events start. This adds a little to the
+     * cost of each event
+     * @return this
+     */
+    public Meter withLiveCounters() {
+        liveCounters = new LiveCounters(timeSource);
+        return this;
+    }
+
+    /**
+     * Take a snapshot of the live counters - cheap enough to poll every few milliseconds, e.g. to assert
+     * that concurrency ramps up, or to stop early when throughput drops
+     * @return a snapshot of the events so far, with the latencies and throughput since the previous snapshot
+     * @throws IllegalStateException if the live counters were not switched on with {@link #withLiveCounters()}
+     */
+    public MeterSnapshot snapshot() {
+        if (liveCounters == null) {
+            throw new IllegalStateException("Live counters are not enabled - use withLiveCounters()");
+        }
+        return liveCounters.snapshot();
+    }
 
     public Set<Thread> getUniqueThreads() {
         return eventTracking.getChannels();
@@ -27,17 +105,90 @@ public class Meter {
      * Register that an event has started - this will mark the current thread
      * as busy and track the busy status until {@link #endEvent()} is called by the same
      * thread. If {@link #startEvent()} is called again before {@link #endEvent()}, then
-     * the thread will be marked as having been active for 1ms.
+     * the thread will be marked as having been active for the smallest unit of time.
      */
     public void startEvent() {
-        eventTracking.addStart(Thread.currentThread());
+        EventLog log = threadLog.get();
+        if (log == null) {
+            log = eventTracking.register(Thread.currentThread());
+            threadLog.set(log);
+        }
+        if (liveCounters != null) {
+            if (log.isRunning()) {
+                liveCounters.abandoned();
+            }
+            liveCounters.started();
+        }
+        log.addStart(timeSource.now());
     }
 
     /**
      * Register that an event on this thread has ended, and record the utilization etc
      */
     public void endEvent() {
-        eventTracking.addEnd(Thread.currentThread());
+        long now = timeSource.now();
+        EventLog log = threadLog.get();
+        if (log == null || !log.isRunning()) {
+            throw new IndexOutOfBoundsException("End provided for channel with no start");
+        }
+        long duration = log.addEnd(now);
+        if (liveCounters != null) {
+            liveCounters.ended(duration);
+        }
+    }
+
+    /**
+     * Register that the event running on this thread has started waiting - e.g. for a lock, queue or
+     * semaphore - so that the statistics can separate time spent waiting from time spent working
+     * @throws IllegalStateException if no event is running on this thread, or it is already waiting
+     */
+    public void beginWait() {
+        long now = timeSource.now();
+        EventLog log = threadLog.get();
+        if (log == null) {
+            throw new IllegalStateException("Wait begun outside of an event");
+        }
+        log.beginWait(now);
+    }
+
+    /**
+     * Register that the event running on this thread has stopped waiting
+     * @throws IllegalStateException if the event on this thread is not waiting
+     */
+    public void endWait() {
+        long now = timeSource.now();
+        EventLog log = threadLog.get();
+        if (log == null) {
+            throw new IllegalStateException("Wait ended without beginning");
+        }
+        log.endWait(now);
+    }
+
+    /**
+     * Wait within an event, recording the start/end of the wait automatically
+     * @param wait the <code>void</code> function which waits - e.g. acquiring a semaphore
+     * @param <E> the type of exception thrown
+     * @throws E as thrown by wait - may be {@link RuntimeException}
+     */
+    public <E extends Exception> void wrapWait(GenericThrowingRunnable<E> wait) throws E {
+        wrapWait(wait.asCallable());
+    }
+
+    /**
+     * Wait within an event, recording the start/end of the wait automatically
+     * @param wait the function which waits - e.g. taking from a queue
+     * @param <T> the type of value returned
+     * @param <E> exception type
+     * @return the return of the function
+     * @throws E as thrown by wait - may be {@link RuntimeException}
+     */
+    public <T, E extends Exception> T wrapWait(GenericThrowingCallable<T, E> wait) throws E {
+        beginWait();
+        try {
+            return wait.call();
+        } finally {
+            endWait();
+        }
     }
 
     /**
@@ -67,6 +218,53 @@ public class Meter {
         }
     }
 
+    /**
+     * Do an asynchronous operation, recording its start when the future is created, and its end when the
+     * future completes. These are tracked separately to the thread events, by {@link AsyncOutcome}, so
+     * successes and failures can be told apart - see {@link #calculateAsyncStatistics()}
+     * If the operation throws, or provides no future, it is recorded as {@link AsyncOutcome#FAILED}
+     * @param operation the operation which provides the future
+     * @param <T> the type of the future's result
+     * @return a future which completes once the original future's completion has been recorded
+     * @throws NullPointerException if the operation provides no future
+     */
+    public <T> CompletableFuture<T> wrapAsync(Supplier<CompletableFuture<T>> operation) {
+        long start = timeSource.now();
+        CompletableFuture<T> future;
+        try {
+            future = operation.get();
+        } catch (Throwable t) {
+            asyncEvents.addEvent(AsyncOutcome.FAILED, start, timeSource.now());
+            throw t;
+        }
+        if (future == null) {
+            asyncEvents.addEvent(AsyncOutcome.FAILED, start, timeSource.now());
+            throw new NullPointerException("Async operation provided no future");
+        }
+        return future.whenComplete((result, error) -> asyncEvents.addEvent(
+                error == null ? AsyncOutcome.SUCCEEDED : AsyncOutcome.FAILED, start, timeSource.now()));
+    }
+
+    /**
+     * Calculate the statistics for the asynchronous operations so far - the channels are the
+     * {@link AsyncOutcome}s, so latencies can be compared for successes and failures, and the concurrency
+     * is the number of operations in flight
+     * @return the {@link EventStatistics} of the operations wrapped by {@link #wrapAsync}
+     */
+    public EventStatistics<AsyncOutcome> calculateAsyncStatistics() {
+        return asyncEvents.calculateStatistics();
+    }
+
+    /**
+     * Calculate the statistics for the asynchronous operations so far, with statistics for each fixed
+     * window of time
+     * @param window the length of each window - e.g. 100ms
+     * @return the {@link EventStatistics} of the operations wrapped by {@link #wrapAsync}
+     */
+    public EventStatistics<AsyncOutcome> calculateAsyncStatistics(Duration window) {
+        return asyncEvents.calculateStatistics(window);
+    }
+
     /**
      * How many threads were involved
      * @return the total number of threads seen
@@ -83,11 +281,41 @@ public class Meter {
         return eventTracking.calculateStatistics();
     }
 
+    /**
+     * Calculate the statistics for the events so far, including throughput, concurrency and utilization
+     * in each fixed window of time, to show warm-up, stalls and so on
+     * @param window the length of each window - e.g. 100ms
+     * @return the {@link EventStatistics} with {@link EventStatistics#getWindows()} populated
+     */
+    public EventStatistics<Thread> calculateStatistics(Duration window) {
+        return eventTracking.calculateStatistics(window);
+    }
+
+    /**
+     * Write the events out as a Chrome Trace Event JSON file, with each thread as a named track, to open in Perfetto
+     * or <code>chrome://tracing</code>. Do this once the metered work is done
+     * @param writer the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        eventTracking.writeChromeTrace(writer);
+    }
+
+    /**
+     * Write the events out in a compact binary format - see {@link EventTracking#writeBinary(OutputStream)}
+     * @param output the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeBinary(OutputStream output) throws IOException {
+        eventTracking.writeBinary(output);
+    }
+
     /**
      * Clock the start point
      */
     public void start() {
         eventTracking.start();
+        asyncEvents.start();
     }
 
     /**
@@ -95,5 +323,6 @@ public class Meter {
      */
     public void stop() {
         eventTracking.stop();
+        asyncEvents.stop();
     }
 }
@@ -0,0 +1,71 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * POJO to hold how often each outcome occurred in an {@link Exploration}
+ * @param <R> the type of outcome
+ */
+public class OutcomeReport<R> {
+    private final long iterations;
+    private final Map<R, Long> outcomes;
+
+    /**
+     * Construct with the outcomes
+     * @param iterations the number of iterations run
+     * @param outcomes the number of times each outcome occurred
+     */
+    @SuppressFBWarnings("EI2")
+    public OutcomeReport(long iterations, Map<R, Long> outcomes) {
+        this.iterations = iterations;
+        this.outcomes = outcomes;
+    }
+
+    /**
+     * How many iterations were run
+     * @return the number of iterations
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Every outcome observed, with how many times it occurred
+     * @return the count of each outcome
+     */
+    public Map<R, Long> getOutcomes() {
+        return Collections.unmodifiableMap(outcomes);
+    }
+
+    /**
+     * How many times an outcome occurred
+     * @param outcome the outcome
+     * @return the count, which is 0 if the outcome was never observed
+     */
+    public long getCount(R outcome) {
+        return outcomes.getOrDefault(outcome, 0L);
+    }
+
+    /**
+     * The proportion of iterations with a given outcome
+     * @param outcome the outcome
+     * @return 0.0 - 1.0
+     */
+    public double getFrequency(R outcome) {
+        return (double) getCount(outcome) / iterations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Outcomes of " + iterations + " iterations:");
+        outcomes.entrySet().stream()
+                .sorted(Map.Entry.<R, Long>comparingByValue().reversed())
+                .forEach(entry -> builder.append(System.lineSeparator())
+                        .append(entry.getKey())
+                        .append(": ")
+                        .append(entry.getValue()));
+        return builder.toString();
+    }
+}
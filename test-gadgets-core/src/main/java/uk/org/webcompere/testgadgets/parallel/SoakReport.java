@@ -0,0 +1,106 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * POJO to hold the outcome of a soak test run by {@link ConcurrentRunner#runFor}
+ */
+public class SoakReport {
+    private final long[] iterations;
+    private final Map<Class<? extends Throwable>, Long> errorCounts;
+    private final Map<Class<? extends Throwable>, Throwable> firstErrors;
+    private final Duration elapsed;
+
+    /**
+     * Construct with the soak data
+     * @param iterations the number of iterations completed by each worker
+     * @param errorCounts the number of errors of each type
+     * @param firstErrors the first error of each type
+     * @param elapsed the time from the workers starting to them all finishing
+     */
+    @SuppressFBWarnings("EI2")
+    public SoakReport(
+            long[] iterations,
+            Map<Class<? extends Throwable>, Long> errorCounts,
+            Map<Class<? extends Throwable>, Throwable> firstErrors,
+            Duration elapsed) {
+        this.iterations = iterations;
+        this.errorCounts = errorCounts;
+        this.firstErrors = firstErrors;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * How many workers ran
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return iterations.length;
+    }
+
+    /**
+     * How many times a worker called the action - including calls which failed
+     * @param worker the worker index
+     * @return the iterations of that worker
+     */
+    public long getIterations(int worker) {
+        return iterations[worker];
+    }
+
+    /**
+     * How many times the action was called by all workers
+     * @return the total iterations
+     */
+    public long getTotalIterations() {
+        return Arrays.stream(iterations).sum();
+    }
+
+    /**
+     * The number of calls to the action which threw an error
+     * @return total errors
+     */
+    public long getTotalErrors() {
+        return errorCounts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * The number of each type of error thrown
+     * @return the count for each error type
+     */
+    public Map<Class<? extends Throwable>, Long> getErrorCounts() {
+        return Collections.unmodifiableMap(errorCounts);
+    }
+
+    /**
+     * The first error thrown of a given type, for diagnosis
+     * @param type the type of error
+     * @return the first error of that type, if there was one
+     */
+    public Optional<Throwable> getFirstError(Class<? extends Throwable> type) {
+        return Optional.ofNullable(firstErrors.get(type));
+    }
+
+    /**
+     * How long the soak ran for
+     * @return the time from the workers starting to them all finishing
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * The rate of calls to the action across all workers
+     * @return iterations per second
+     */
+    public double getThroughput() {
+        if (elapsed.isZero()) {
+            return 0;
+        }
+        return getTotalIterations() * 1_000_000_000.0d / elapsed.toNanos();
+    }
+}
@@ -0,0 +1,15 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+/**
+ * One step of a scenario run by {@link ConcurrentRunner#executeInSteps(int, Step...)}. All workers
+ * finish a step before any of them starts the next.
+ */
+@FunctionalInterface
+public interface Step {
+    /**
+     * Perform the step
+     * @param worker the index of the worker performing the step
+     * @throws Exception on any error - this stops the worker from performing any further steps
+     */
+    void run(int worker) throws Exception;
+}
@@ -0,0 +1,30 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+/**
+ * An error in one of the workers of a {@link ConcurrentRunner}, recording which worker, or item of
+ * data, it came from. These are attached as suppressed exceptions to the {@link AssertionError} thrown
+ * when workers fail.
+ */
+public class WorkerFailure extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+
+    /**
+     * Construct a failure
+     * @param index the index of the worker, or item of data, which failed
+     * @param cause the error
+     */
+    public WorkerFailure(int index, Throwable cause) {
+        super("Worker " + index + " failed: " + cause, cause);
+        this.index = index;
+    }
+
+    /**
+     * Which worker, or item of data, failed
+     * @return the index
+     */
+    public int getIndex() {
+        return index;
+    }
+}
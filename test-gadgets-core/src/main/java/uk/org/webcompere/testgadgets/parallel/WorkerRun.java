@@ -0,0 +1,136 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The shared state of one run of workers - lines them up to start together, tracks which threads
+ * are running them, collects their failures and, when failing fast or timing out, stops them.
+ */
+class WorkerRun {
+    private final boolean failFast;
+    private final CountDownLatch startFlag = new CountDownLatch(1);
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private final Thread[] threads;
+    private final List<WorkerFailure> failures = new ArrayList<>();
+    private int remaining;
+    private volatile boolean stopped;
+
+    WorkerRun(int workers, boolean failFast) {
+        this.failFast = failFast;
+        this.threads = new Thread[workers];
+        this.remaining = workers;
+        if (workers == 0) {
+            completion.countDown();
+        }
+    }
+
+    /**
+     * Called by a worker to wait for the start
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void awaitStart() throws InterruptedException {
+        startFlag.await();
+    }
+
+    /**
+     * Called by a worker when it is running on the current thread
+     * @param worker the worker index
+     */
+    synchronized void begin(int worker) {
+        threads[worker] = Thread.currentThread();
+    }
+
+    /**
+     * Called by a worker when it has finished - or will never run
+     * @param worker the worker index
+     */
+    synchronized void end(int worker) {
+        threads[worker] = null;
+        remaining--;
+        if (remaining == 0) {
+            completion.countDown();
+        }
+    }
+
+    /**
+     * Record a failure
+     * @param index the index of the worker or data item
+     * @param error the error
+     */
+    synchronized void fail(int index, Throwable error) {
+        if (stopped) {
+            // secondary errors, probably caused by stopping
+            return;
+        }
+        failures.add(new WorkerFailure(index, error));
+        if (failFast) {
+            stop();
+        }
+    }
+
+    /**
+     * Have the workers been told to stop
+     * @return true if workers should give up
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Stop the run - interrupt any workers that are running and release the waiting caller
+     */
+    synchronized void stop() {
+        stopped = true;
+        for (Thread thread : threads) {
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+        completion.countDown();
+    }
+
+    /**
+     * Start the workers and wait for them to finish, or for the run to be stopped
+     * @param timeout the longest to wait, or null to wait forever
+     */
+    void startAndAwait(Duration timeout) {
+        startFlag.countDown();
+        try {
+            if (timeout == null) {
+                completion.await();
+            } else if (!completion.await(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                int stillRunning = stillRunning();
+                stop();
+                throw withFailures(new AssertionError(
+                        "Timed out after " + timeout + " with " + stillRunning + " worker(s) still running"));
+            }
+        } catch (InterruptedException e) {
+            stop();
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Error awaiting the thread completion", e);
+        }
+    }
+
+    /**
+     * Throw an {@link AssertionError} if there were failures, with each {@link WorkerFailure} attached
+     * as suppressed
+     */
+    synchronized void throwIfFailed() {
+        if (!failures.isEmpty()) {
+            throw withFailures(new AssertionError("There were errors in the worker threads: " + failures));
+        }
+    }
+
+    private synchronized int stillRunning() {
+        return remaining;
+    }
+
+    private synchronized AssertionError withFailures(AssertionError error) {
+        failures.forEach(error::addSuppressed);
+        return error;
+    }
+}
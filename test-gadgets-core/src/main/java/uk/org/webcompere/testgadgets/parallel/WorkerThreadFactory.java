@@ -0,0 +1,70 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ThreadFactory} for the threads of a {@link ConcurrentRunner}, so they can be named and
+ * configured. Use with {@link ExecutorFactory#threadPerTask(ThreadFactory)}. Threads are named with
+ * the prefix followed by a sequence number - e.g. <code>worker-0</code>.
+ */
+public class WorkerThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private String namePrefix = "worker";
+    private boolean daemon;
+    private int priority = Thread.NORM_PRIORITY;
+    private ThreadGroup group;
+
+    /**
+     * Fluent setter of the prefix of the thread names
+     * @param namePrefix the prefix
+     * @return this
+     */
+    public WorkerThreadFactory named(String namePrefix) {
+        this.namePrefix = namePrefix;
+        return this;
+    }
+
+    /**
+     * Fluent setter of whether the threads are daemon threads, which don't stop the JVM exiting
+     * @param daemon true for daemon threads
+     * @return this
+     */
+    public WorkerThreadFactory daemon(boolean daemon) {
+        this.daemon = daemon;
+        return this;
+    }
+
+    /**
+     * Fluent setter of the thread priority
+     * @param priority between {@link Thread#MIN_PRIORITY} and {@link Thread#MAX_PRIORITY}
+     * @return this
+     */
+    public WorkerThreadFactory priority(int priority) {
+        if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+            throw new IllegalArgumentException("Priority out of range: " + priority);
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Fluent setter of the group to create the threads in
+     * @param group the thread group
+     * @return this
+     */
+    @SuppressFBWarnings("EI2")
+    public WorkerThreadFactory group(ThreadGroup group) {
+        this.group = group;
+        return this;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(group, runnable, namePrefix + "-" + threadNumber.getAndIncrement());
+        thread.setDaemon(daemon);
+        thread.setPriority(priority);
+        return thread;
+    }
+}
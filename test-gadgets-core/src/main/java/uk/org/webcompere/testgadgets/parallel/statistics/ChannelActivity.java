@@ -0,0 +1,65 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+/**
+ * POJO to hold how a channel's time was split between being active and idle, from its first event
+ * starting to its last event ending. Overlapping events on the channel are only counted once
+ */
+public class ChannelActivity {
+    private final long activeTime;
+    private final long idleTime;
+    private final long idleGaps;
+    private final long longestIdleGap;
+
+    /**
+     * Construct with activity data
+     * @param activeTime the time during which at least one event was running
+     * @param idleTime the total time between events
+     * @param idleGaps the number of gaps between events
+     * @param longestIdleGap the longest gap between events
+     */
+    public ChannelActivity(long activeTime, long idleTime, long idleGaps, long longestIdleGap) {
+        this.activeTime = activeTime;
+        this.idleTime = idleTime;
+        this.idleGaps = idleGaps;
+        this.longestIdleGap = longestIdleGap;
+    }
+
+    /**
+     * The time during which at least one event was running
+     * @return the active time, in the unit of the events
+     */
+    public long getActiveTime() {
+        return activeTime;
+    }
+
+    /**
+     * The total time between the channel's events - this excludes any time before its first event or
+     * after its last
+     * @return the idle time, in the unit of the events
+     */
+    public long getIdleTime() {
+        return idleTime;
+    }
+
+    /**
+     * How many times the channel went idle between events
+     * @return the number of idle gaps
+     */
+    public long getIdleGaps() {
+        return idleGaps;
+    }
+
+    /**
+     * The longest time the channel was idle between events - e.g. a stalled worker
+     * @return the longest idle gap, in the unit of the events
+     */
+    public long getLongestIdleGap() {
+        return longestIdleGap;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelActivity{activeTime=" + activeTime + ", idleTime=" + idleTime + ", idleGaps=" + idleGaps
+                + ", longestIdleGap=" + longestIdleGap + "}";
+    }
+}
@@ -0,0 +1,131 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.util.Arrays;
+
+/**
+ * How concurrency varied over a period - the time spent at each level of concurrency, and the peak.
+ * Calculated with a single sweep over sorted arrays of event starts and ends, so it stays cheap with
+ * millions of events. Every event counts, even if several overlap on the same channel. Where an event
+ * starts at the same moment another ends, they are treated as overlapping.
+ */
+public class ConcurrencyProfile {
+    private final long[] timeAtConcurrency;
+    private final int peakConcurrency;
+    private final long peakTime;
+    private final long totalTime;
+
+    private ConcurrencyProfile(long[] timeAtConcurrency, int peakConcurrency, long peakTime, long totalTime) {
+        this.timeAtConcurrency = timeAtConcurrency;
+        this.peakConcurrency = peakConcurrency;
+        this.peakTime = peakTime;
+        this.totalTime = totalTime;
+    }
+
+    /**
+     * Sweep through the events to calculate the profile
+     * @param sortedStarts the start of every event, in ascending order
+     * @param sortedEnds the end of every event, in ascending order
+     * @param from the start of the period to profile the time over
+     * @param to the end of the period to profile the time over
+     * @return the profile
+     */
+    public static ConcurrencyProfile of(long[] sortedStarts, long[] sortedEnds, long from, long to) {
+        long[] timeAtConcurrency = new long[2];
+        int peakConcurrency = 0;
+        long peakTime = 0;
+
+        int active = 0;
+        long lastTime = from;
+        int startsIndex = 0;
+        int endsIndex = 0;
+        while (startsIndex < sortedStarts.length || endsIndex < sortedEnds.length) {
+            boolean isStart = endsIndex == sortedEnds.length
+                    || (startsIndex < sortedStarts.length && sortedStarts[startsIndex] <= sortedEnds[endsIndex]);
+            long when = isStart ? sortedStarts[startsIndex++] : sortedEnds[endsIndex++];
+
+            long until = Math.min(Math.max(when, from), to);
+            if (until > lastTime) {
+                timeAtConcurrency[active] += until - lastTime;
+                lastTime = until;
+            }
+
+            if (isStart) {
+                active++;
+                if (active == timeAtConcurrency.length) {
+                    timeAtConcurrency = Arrays.copyOf(timeAtConcurrency, active * 2);
+                }
+                if (active > peakConcurrency) {
+                    peakConcurrency = active;
+                    peakTime = when;
+                }
+            } else {
+                active = Math.max(0, active - 1);
+            }
+        }
+        if (to > lastTime) {
+            timeAtConcurrency[active] += to - lastTime;
+        }
+
+        return new ConcurrencyProfile(
+                Arrays.copyOf(timeAtConcurrency, peakConcurrency + 1),
+                peakConcurrency,
+                peakTime,
+                Math.max(0, to - from));
+    }
+
+    /**
+     * The highest number of overlapping events
+     * @return the peak concurrency, or 0 if there were no events
+     */
+    public int getPeakConcurrency() {
+        return peakConcurrency;
+    }
+
+    /**
+     * When the peak concurrency was first reached
+     * @return the time of the peak, or 0 if there were no events
+     */
+    public long getPeakTime() {
+        return peakTime;
+    }
+
+    /**
+     * How long was spent at a given level of concurrency
+     * @param concurrency the number of overlapping events
+     * @return the time spent at exactly that concurrency
+     */
+    public long getTimeAtConcurrency(int concurrency) {
+        if (concurrency < 0 || concurrency >= timeAtConcurrency.length) {
+            return 0;
+        }
+        return timeAtConcurrency[concurrency];
+    }
+
+    /**
+     * How long was spent at or above a given level of concurrency
+     * @param concurrency the number of overlapping events
+     * @return the time spent at that concurrency or higher
+     */
+    public long getTimeAtOrAboveConcurrency(int concurrency) {
+        long total = 0;
+        for (int i = Math.max(0, concurrency); i < timeAtConcurrency.length; i++) {
+            total += timeAtConcurrency[i];
+        }
+        return total;
+    }
+
+    /**
+     * The time-weighted average concurrency over the period
+     * @return the mean number of overlapping events
+     */
+    public double getMeanConcurrency() {
+        if (totalTime == 0) {
+            return 0;
+        }
+        double weighted = 0;
+        for (int i = 1; i < timeAtConcurrency.length; i++) {
+            weighted += (double) i * timeAtConcurrency[i];
+        }
+        return weighted / totalTime;
+    }
+}
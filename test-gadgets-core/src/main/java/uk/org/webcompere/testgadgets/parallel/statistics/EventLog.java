@@ -1,135 +1,176 @@
 package uk.org.webcompere.testgadgets.parallel.statistics;
 
-import java.util.LinkedList;
-import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
 
 /**
  * Quickly store switch on and off events for a channel, and provide support for calculating
- * statistics afterwards.
+ * statistics afterwards. The events are held in primitive arrays, so recording an event does not
+ * allocate, other than when the arrays need to grow. The count, latencies, active time and time range
+ * are kept up to date as events are recorded, so they stay exact when an {@link EventRetention}
+ * limits how many raw events are kept - the active time as long as events are recorded in the order they
+ * started. Not thread safe - each log should be written by one thread
+ * at a time.
  */
 public class EventLog {
-    private LinkedList<Event> events = new LinkedList<>();
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long NOT_ENDED = -1;
+    private static final int NOT_RETAINED = -1;
 
-    /**
-     * A timepoint for a channel, used to help with establish the switch on/off timeline
-     * @param <T> the channel
-     */
-    static final class Timepoint<T> implements Comparable<Timepoint<T>> {
-        private final long when;
-        private final T channel;
-
-        public Timepoint(T channel, long when) {
-            this.channel = channel;
-            this.when = when;
-        }
+    private final EventRetention retention;
+    private long[] starts;
+    private long[] ends;
+    private int size;
+    private long count;
+    private SplittableRandom random;
+    private LatencyHistogram latencies = new LatencyHistogram();
 
-        /**
-         * Which channel
-         * @return the channel
-         */
-        public T getChannel() {
-            return channel;
-        }
+    // the most recently started event, which addEnd ends
+    private boolean lastRunning;
+    private long lastStart;
+    private int lastSlot = NOT_RETAINED;
 
-        /**
-         * When did the operation happen
-         * @return timepoint
-         */
-        public long getWhen() {
-            return when;
-        }
+    // time the running event has spent waiting, rather than working
+    private boolean waiting;
+    private long waitStart;
+    private long waitTime;
 
-        /**
-         * Sortable into ascending order
-         * @param other the other one
-         * @return the comparison
-         */
-        @Override
-        public int compareTo(Timepoint<T> other) {
-            return Long.compare(when, other.when);
-        }
+    private long earliest = Long.MAX_VALUE;
+    private long latest = Long.MIN_VALUE;
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-            Timepoint<?> timepoint = (Timepoint<?>) o;
-            return when == timepoint.when && Objects.equals(channel, timepoint.channel);
-        }
+    // the union of the event intervals, merged as events are recorded
+    private IntervalUnion union = new IntervalUnion();
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(when, channel);
-        }
+    /**
+     * Construct a log which keeps every event
+     */
+    public EventLog() {
+        this(EventRetention.all());
     }
 
     /**
-     * An event object
+     * Construct a log which keeps raw events according to a retention policy
+     * @param retention how many raw events to keep
      */
-    static class Event {
-        private long start;
-        private long end;
+    public EventLog(EventRetention retention) {
+        this.retention = retention;
+        int initialCapacity = Math.min(INITIAL_CAPACITY, retention.getCapacity());
+        starts = new long[initialCapacity];
+        ends = new long[initialCapacity];
+    }
 
-        Event(long start) {
-            this(start, -1);
+    /**
+     * Add a starting event. If the previous event is still running, it is treated as having
+     * lasted the smallest unit of time
+     * @param start the start time
+     */
+    public void addStart(long start) {
+        if (lastRunning) {
+            merge(lastStart, NOT_ENDED);
         }
-
-        Event(long start, long end) {
-            this.start = start;
-            this.end = end;
+        waiting = false;
+        int slot = retain();
+        count++;
+        if (slot != NOT_RETAINED) {
+            starts[slot] = start;
+            ends[slot] = NOT_ENDED;
         }
+        lastRunning = true;
+        lastStart = start;
+        lastSlot = slot;
+        recordRange(start, NOT_ENDED);
+    }
 
-        long getStart() {
-            return start;
+    /**
+     * Add an ending event time to the last event
+     * @param end the end time
+     * @return the duration of the event
+     * @throws IllegalStateException if no event is running
+     */
+    public long addEnd(long end) {
+        if (!lastRunning) {
+            throw new IllegalStateException("No event running");
         }
-
-        void setEnd(long end) {
-            this.end = end;
+        lastRunning = false;
+        if (waiting) {
+            endWait(end);
         }
-
-        long getEffectiveEnd() {
-            if (end == -1 || end == start) {
-                return start + 1;
-            }
-            return end;
+        if (lastSlot != NOT_RETAINED) {
+            ends[lastSlot] = end;
         }
+        long duration = end - lastStart;
+        latencies.record(duration);
+        recordRange(lastStart, end);
+        merge(lastStart, end);
+        return duration;
+    }
 
-        boolean isRunning() {
-            return end == -1;
+    /**
+     * Add a complete event - for channels where events overlap, which are recorded as they end
+     * @param start the start time
+     * @param end the end time
+     */
+    public void addEvent(long start, long end) {
+        int slot = retain();
+        count++;
+        if (slot != NOT_RETAINED) {
+            starts[slot] = start;
+            ends[slot] = end;
+            if (slot == lastSlot) {
+                // the running event has been pushed out
+                lastSlot = NOT_RETAINED;
+            }
         }
+        latencies.record(end - start);
+        recordRange(start, end);
+        merge(start, end);
+    }
 
-        void merge(Event event) {
-            end = event.getEffectiveEnd();
+    /**
+     * Mark the running event as waiting - e.g. on a lock, queue or semaphore - rather than working
+     * @param time the time the wait began
+     * @throws IllegalStateException if no event is running, or it is already waiting
+     */
+    public void beginWait(long time) {
+        if (!lastRunning) {
+            throw new IllegalStateException("Wait begun outside of an event");
         }
-
-        boolean overlaps(Event event) {
-            return event.getStart() <= start || event.getStart() <= end;
+        if (waiting) {
+            throw new IllegalStateException("Already waiting");
         }
+        waiting = true;
+        waitStart = time;
+    }
 
-        Event copy() {
-            return new Event(start, end);
+    /**
+     * Mark the running event as working again. If the event ends while waiting, the wait ends with it
+     * @param time the time the wait ended
+     * @throws IllegalStateException if not waiting
+     */
+    public void endWait(long time) {
+        if (!waiting) {
+            throw new IllegalStateException("Wait ended without beginning");
         }
+        waiting = false;
+        waitTime += time - waitStart;
     }
 
     /**
-     * Add a starting event
-     * @param start the start time
+     * Is the running event waiting
+     * @return true if between {@link #beginWait(long)} and {@link #endWait(long)}
      */
-    public void addStart(long start) {
-        events.add(new Event(start));
+    public boolean isWaiting() {
+        return waiting;
     }
 
     /**
-     * Add an ending event time to the last event
-     * @param end the start time
+     * The total time events have spent waiting. Waits are within events, so this is part of
+     * the active time
+     * @return the wait time, not including a wait still in progress
      */
-    public void addEnd(long end) {
-        events.getLast().setEnd(end);
+    public long getWaitTime() {
+        return waitTime;
     }
 
     /**
@@ -137,65 +178,212 @@ public class EventLog {
      * @return true if the last event is started and not finished
      */
     public boolean isRunning() {
-        return events.getLast().isRunning();
+        return lastRunning;
+    }
+
+    /**
+     * How many raw events are held - with a bounded {@link EventRetention} this may be fewer than
+     * were recorded
+     * @return the number of events held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * How many events have been recorded
+     * @return the number of events, including any not held
+     */
+    public long getEventCount() {
+        return count;
+    }
+
+    /**
+     * The start of an event - events are in the order they were recorded, except when sampled
+     * @param event the index of the event, from 0 to {@link #size()} - 1
+     * @return the start time
+     */
+    public long getStart(int event) {
+        return starts[slotOf(event)];
+    }
+
+    /**
+     * The end of an event
+     * @param event the index of the event, from 0 to {@link #size()} - 1
+     * @return the end time, or -1 if the event has not ended
+     */
+    public long getEnd(int event) {
+        return ends[slotOf(event)];
+    }
+
+    /**
+     * The latencies of the events which have ended
+     * @return the histogram of event durations, filled in as each event ends
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
     }
 
     /**
      * Get the earliest start time
-     * @return the first event's start
+     * @return the earliest event start
      */
     public long getEarliest() {
-        return events.getFirst().getStart();
+        checkNotEmpty();
+        return earliest;
     }
 
     /**
      * Get the latest end time
-     * @return the last event's end
+     * @return the latest event end
      */
     public long getLatest() {
-        return events.getLast().getEffectiveEnd();
+        checkNotEmpty();
+        return latest;
     }
 
     /**
-     * Provide all start times, adding in the channel the outside world thinks
-     * they relate to
-     * @param channel the channel identifier
-     * @param <T> the type of channel
-     * @return all start times as a stream
+     * Copy all start times into an array, for calculations across all channels
+     * @param target the array to copy into
+     * @param offset where in the target to start copying
+     * @return the offset after the copied times
      */
-    public <T> Stream<Timepoint<T>> getStarts(T channel) {
-        return events.stream().map(event -> new Timepoint<>(channel, event.getStart()));
+    public int copyStarts(long[] target, int offset) {
+        System.arraycopy(starts, 0, target, offset, size);
+        return offset + size;
     }
 
     /**
-     * Get all finish times
-     * @param channel the channel identifier
-     * @param <T> the type of channel
-     * @return all finish times as a stream
+     * Copy all finish times into an array, for calculations across all channels. Events which have
+     * not finished, or took no time, are treated as taking the smallest unit of time
+     * @param target the array to copy into
+     * @param offset where in the target to start copying
+     * @return the offset after the copied times
      */
-    public <T> Stream<Timepoint<T>> getFinishes(T channel) {
-        return events.stream().map(event -> new Timepoint<>(channel, event.getEffectiveEnd()));
+    public int copyFinishes(long[] target, int offset) {
+        for (int i = 0; i < size; i++) {
+            target[offset + i] = effectiveEnd(starts[i], ends[i]);
+        }
+        return offset + size;
     }
 
     /**
-     * Work out the total time spent by this channel. Avoid double counting consecutive events which overlap
+     * Work out the total time spent by this channel. Avoid double counting events which overlap
      * @return the total time spent doing things
      */
     public double totalActivityTime() {
-        LinkedList<Event> simplified = new LinkedList<>();
-        events.forEach(event -> mergeInto(event, simplified));
+        return getActivity().getActiveTime();
+    }
+
+    /**
+     * Work out how the channel's time was split between activity and idle gaps. When the events were
+     * recorded in the order they started, as a thread's are, this comes from the union merged as they were
+     * recorded. Otherwise the starts and ends are sorted and swept to find the union
+     * @return the activity of the channel
+     */
+    public ChannelActivity getActivity() {
+        IntervalUnion current = union;
+        if (lastRunning) {
+            current = union.copy();
+            current.add(lastStart, effectiveEnd(lastStart, NOT_ENDED));
+        }
+        if (current.isExact() || retention.isBounded() || size == 0) {
+            // when bounded, not all the events are available to sort, so the merged union is the best there is
+            return current.toActivity();
+        }
+        return sweepActivity();
+    }
+
+    private ChannelActivity sweepActivity() {
+        long[] sortedStarts = Arrays.copyOf(starts, size);
+        long[] sortedEnds = new long[size];
+        copyFinishes(sortedEnds, 0);
+        Arrays.sort(sortedStarts);
+        Arrays.sort(sortedEnds);
 
-        return simplified.stream()
-                .mapToDouble(event -> event.getEffectiveEnd() - event.getStart())
-                .sum();
+        // each time the number of running events rises from zero, a run of activity starts
+        IntervalUnion sweep = new IntervalUnion();
+        int running = 0;
+        long runStart = 0;
+        int endIndex = 0;
+        for (int startIndex = 0; startIndex < size; startIndex++) {
+            while (sortedEnds[endIndex] < sortedStarts[startIndex]) {
+                running--;
+                if (running == 0) {
+                    sweep.add(runStart, sortedEnds[endIndex]);
+                }
+                endIndex++;
+            }
+            if (running == 0) {
+                runStart = sortedStarts[startIndex];
+            }
+            running++;
+        }
+        sweep.add(runStart, sortedEnds[size - 1]);
+        return sweep.toActivity();
+    }
+
+    /**
+     * Events which have not ended, or took no measurable time, are treated as lasting one unit of time
+     * @param start the start of the event
+     * @param end the end of the event, or {@link #NOT_ENDED}
+     * @return the end to use for calculations
+     */
+    private static long effectiveEnd(long start, long end) {
+        if (end == NOT_ENDED || end == start) {
+            return start + 1;
+        }
+        return end;
+    }
+
+    private void recordRange(long start, long end) {
+        earliest = Math.min(earliest, start);
+        latest = Math.max(latest, effectiveEnd(start, end));
+    }
+
+    private void merge(long start, long end) {
+        union.add(start, effectiveEnd(start, end));
+    }
+
+    /**
+     * Find the slot for a new event according to the retention policy
+     * @return the slot, or {@link #NOT_RETAINED}
+     */
+    private int retain() {
+        int capacity = retention.getCapacity();
+        if (size < capacity) {
+            if (size == starts.length) {
+                int grown = (int) Math.min((long) size * 2, capacity);
+                starts = Arrays.copyOf(starts, grown);
+                ends = Arrays.copyOf(ends, grown);
+            }
+            return size++;
+        }
+        if (retention.getPolicy() == EventRetention.Policy.LATEST) {
+            return (int) (count % capacity);
+        }
+        // reservoir sampling - the new event replaces a random one with probability capacity / (count + 1)
+        if (random == null) {
+            random = new SplittableRandom();
+        }
+        long replace = random.nextLong(count + 1);
+        return replace < capacity ? (int) replace : NOT_RETAINED;
+    }
+
+    private int slotOf(int event) {
+        if (event < 0 || event >= size) {
+            throw new IndexOutOfBoundsException("No event " + event);
+        }
+        if (retention.getPolicy() == EventRetention.Policy.LATEST && count > size) {
+            // the ring buffer has wrapped, so the oldest event is in the slot after the newest
+            return (int) ((count + event) % size);
+        }
+        return event;
     }
 
-    private static void mergeInto(Event event, LinkedList<Event> simplified) {
-        if (!simplified.isEmpty() && simplified.getLast().overlaps(event)) {
-            // merge
-            simplified.getLast().merge(event);
-        } else {
-            simplified.add(event.copy());
+    private void checkNotEmpty() {
+        if (count == 0) {
+            throw new NoSuchElementException("No events");
         }
     }
 }
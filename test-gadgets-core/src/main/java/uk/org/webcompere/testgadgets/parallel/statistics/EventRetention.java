@@ -0,0 +1,84 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+/**
+ * How many raw events an {@link EventLog} keeps. Whatever is kept, the log's count of events,
+ * latency histogram, earliest start and latest end are exact. The active time is exact when events are
+ * recorded in the order they started, as a thread's events are. When they're recorded out of order with
+ * a bounded policy - e.g. overlapping events for a key of a {@code KeyedMeter}, or asynchronous operations
+ * - it is an estimate, which may count some overlaps twice. The concurrency profile, windows and
+ * exported timelines are calculated from the raw events that were kept, so with a bounded policy they
+ * describe a sample of the test. Bounded policies keep memory flat during long soak tests.
+ */
+public class EventRetention {
+    private static final EventRetention ALL = new EventRetention(Policy.ALL, Integer.MAX_VALUE);
+
+    /**
+     * The kinds of retention
+     */
+    enum Policy {
+        ALL,
+        LATEST,
+        SAMPLE
+    }
+
+    private final Policy policy;
+    private final int capacity;
+
+    private EventRetention(Policy policy, int capacity) {
+        this.policy = policy;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Keep every event - the default
+     * @return the retention policy
+     */
+    public static EventRetention all() {
+        return ALL;
+    }
+
+    /**
+     * Keep only the most recent events, in a ring buffer
+     * @param capacity the number of events to keep per channel
+     * @return the retention policy
+     */
+    public static EventRetention latest(int capacity) {
+        return new EventRetention(Policy.LATEST, checkCapacity(capacity));
+    }
+
+    /**
+     * Keep a uniform random sample of the events, using reservoir sampling
+     * @param capacity the number of events to keep per channel
+     * @return the retention policy
+     */
+    public static EventRetention sample(int capacity) {
+        return new EventRetention(Policy.SAMPLE, checkCapacity(capacity));
+    }
+
+    /**
+     * Is this policy bounded
+     * @return true if only some events are kept
+     */
+    public boolean isBounded() {
+        return policy != Policy.ALL;
+    }
+
+    /**
+     * The most events kept per channel
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        return capacity;
+    }
+}
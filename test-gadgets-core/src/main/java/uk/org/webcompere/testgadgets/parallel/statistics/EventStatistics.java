@@ -1,9 +1,13 @@
 package uk.org.webcompere.testgadgets.parallel.statistics;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * POJO to hold the statistics for all the events
@@ -13,6 +17,15 @@ public class EventStatistics<T> {
     private Map<T, Double> utilizations;
     private int maxConcurrency;
     private int totalEvents;
+    private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+    private long elapsedTime;
+    private Map<T, Double> activeTimes = Collections.emptyMap();
+    private Map<T, ChannelActivity> activity = Collections.emptyMap();
+    private Map<T, Long> waitTimes = Collections.emptyMap();
+    private Map<T, LatencyHistogram> channelLatencies = Collections.emptyMap();
+    private LatencyHistogram latencies = new LatencyHistogram();
+    private List<WindowStatistics> windows = Collections.emptyList();
+    private ConcurrencyProfile concurrencyProfile;
 
     /**
      * Construct with event data
@@ -27,6 +40,171 @@ public class EventStatistics<T> {
         this.totalEvents = totalEvents;
     }
 
+    /**
+     * Add the timings behind the utilizations
+     * @param timeUnit the unit of all times
+     * @param elapsedTime the period the statistics cover
+     * @param activeTimes the time each channel was active
+     * @return this for fluent construction
+     */
+    @SuppressFBWarnings("EI2")
+    EventStatistics<T> withTiming(TimeUnit timeUnit, long elapsedTime, Map<T, Double> activeTimes) {
+        this.timeUnit = timeUnit;
+        this.elapsedTime = elapsedTime;
+        this.activeTimes = activeTimes;
+        return this;
+    }
+
+    /**
+     * Add the split of each channel's time between activity and idle gaps
+     * @param activity the activity of each channel
+     * @return this for fluent construction
+     */
+    @SuppressFBWarnings("EI2")
+    EventStatistics<T> withActivity(Map<T, ChannelActivity> activity) {
+        this.activity = activity;
+        return this;
+    }
+
+    /**
+     * Add the time each channel spent waiting within its events
+     * @param waitTimes the wait time of each channel
+     * @return this for fluent construction
+     */
+    @SuppressFBWarnings("EI2")
+    EventStatistics<T> withWaits(Map<T, Long> waitTimes) {
+        this.waitTimes = waitTimes;
+        return this;
+    }
+
+    /**
+     * Add the latency histograms of each channel
+     * @param channelLatencies the latencies of each channel - the aggregate is calculated from these
+     * @return this for fluent construction
+     */
+    @SuppressFBWarnings("EI2")
+    EventStatistics<T> withLatencies(Map<T, LatencyHistogram> channelLatencies) {
+        this.channelLatencies = channelLatencies;
+        this.latencies = new LatencyHistogram();
+        channelLatencies.values().forEach(latencies::add);
+        return this;
+    }
+
+    /**
+     * Add the profile of concurrency over time
+     * @param concurrencyProfile the profile
+     * @return this for fluent construction
+     */
+    EventStatistics<T> withConcurrencyProfile(ConcurrencyProfile concurrencyProfile) {
+        this.concurrencyProfile = concurrencyProfile;
+        return this;
+    }
+
+    /**
+     * Add the statistics for each window of time
+     * @param windows the windows, in time order
+     * @return this for fluent construction
+     */
+    @SuppressFBWarnings("EI2")
+    EventStatistics<T> withWindows(List<WindowStatistics> windows) {
+        this.windows = windows;
+        return this;
+    }
+
+    /**
+     * The unit of all the times in these statistics
+     * @return the time unit
+     */
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * The length of the period measured - from the start, or first event, to the stop, or last event
+     * @return the elapsed time in {@link #getTimeUnit()}
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * The length of the period measured
+     * @return the elapsed time as a {@link Duration}
+     */
+    public Duration getElapsed() {
+        return toDuration(elapsedTime);
+    }
+
+    /**
+     * How long a channel spent active
+     * @param channel the channel
+     * @return the active time, in {@link #getTimeUnit()}
+     */
+    public double getActiveTime(T channel) {
+        return Optional.ofNullable(activeTimes.get(channel))
+                .orElseThrow(() -> new NoSuchElementException("No records for " + channel));
+    }
+
+    /**
+     * How a channel's time was split between activity and idle gaps
+     * @param channel the channel
+     * @return the channel's activity, with times in {@link #getTimeUnit()}
+     */
+    public ChannelActivity getActivity(T channel) {
+        return Optional.ofNullable(activity.get(channel))
+                .orElseThrow(() -> new NoSuchElementException("No records for " + channel));
+    }
+
+    /**
+     * The longest any channel was idle between its events - e.g. a worker which stalled
+     * @return the longest idle gap in {@link #getTimeUnit()}, or 0 if no channel went idle
+     */
+    public long getLongestIdleGap() {
+        return activity.values().stream()
+                .mapToLong(ChannelActivity::getLongestIdleGap)
+                .max()
+                .orElse(0);
+    }
+
+    /**
+     * How long a channel spent waiting - e.g. on locks, queues or semaphores - within its events
+     * @param channel the channel
+     * @return the wait time, in {@link #getTimeUnit()}
+     */
+    public long getWaitTime(T channel) {
+        return Optional.ofNullable(waitTimes.get(channel))
+                .orElseThrow(() -> new NoSuchElementException("No records for " + channel));
+    }
+
+    /**
+     * The proportion of a channel's active time which was spent waiting rather than working
+     * @param channel the channel
+     * @return 0.0 - 1.0
+     */
+    public double getWaitFraction(T channel) {
+        return fraction(getWaitTime(channel), getActiveTime(channel));
+    }
+
+    /**
+     * The proportion of the active time, across all channels, which was spent waiting rather than working.
+     * A high wait fraction in a test which scales poorly points to contention rather than work
+     * @return 0.0 - 1.0
+     */
+    public double getWaitFraction() {
+        return fraction(
+                waitTimes.values().stream().mapToLong(Long::longValue).sum(),
+                activeTimes.values().stream().mapToDouble(Double::doubleValue).sum());
+    }
+
+    /**
+     * Convert an amount of time from these statistics into a {@link Duration}
+     * @param amount the amount in {@link #getTimeUnit()}
+     * @return the equivalent duration
+     */
+    public Duration toDuration(long amount) {
+        return Duration.of(amount, timeUnit.toChronoUnit());
+    }
+
     /**
      * How many events were there
      * @return total events recorded
@@ -35,6 +213,22 @@ public class EventStatistics<T> {
         return totalEvents;
     }
 
+    /**
+     * The rate at which events happened over the whole period
+     * @return events per second
+     */
+    public double getThroughput() {
+        return perSecond(totalEvents, elapsedTime, timeUnit);
+    }
+
+    /**
+     * The statistics for each fixed window of time, if they were requested when calculating
+     * @return the windows in time order, or an empty list
+     */
+    public List<WindowStatistics> getWindows() {
+        return Collections.unmodifiableList(windows);
+    }
+
     /**
      * What was the peak concurrency reached
      * @return the maximum number of overlapping events
@@ -43,6 +237,14 @@ public class EventStatistics<T> {
         return maxConcurrency;
     }
 
+    /**
+     * How concurrency varied over the period - the time spent at each level, and when the peak was reached
+     * @return the concurrency profile, or empty if these statistics were not calculated from events
+     */
+    public Optional<ConcurrencyProfile> getConcurrencyProfile() {
+        return Optional.ofNullable(concurrencyProfile);
+    }
+
     /**
      * What was the average utilization across all channels?
      * @return 0.0 - 1.0
@@ -60,4 +262,74 @@ public class EventStatistics<T> {
         return Optional.ofNullable(utilizations.get(channel))
                 .orElseThrow(() -> new NoSuchElementException("No records for " + channel));
     }
+
+    /**
+     * The latency, across all channels, which the given proportion of events completed within. Only
+     * events with a recorded end are included.
+     * @param percentile the percentile as a fraction - e.g. <code>0.99</code> for p99
+     * @return the latency in {@link #getTimeUnit()}
+     */
+    public long getLatencyPercentile(double percentile) {
+        return latencies.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * The latency, on one channel, which the given proportion of events completed within
+     * @param channel the channel
+     * @param percentile the percentile as a fraction - e.g. <code>0.99</code> for p99
+     * @return the latency in {@link #getTimeUnit()}
+     */
+    public long getLatencyPercentile(T channel, double percentile) {
+        return channelHistogram(channel).getValueAtPercentile(percentile);
+    }
+
+    /**
+     * The longest event across all channels
+     * @return the maximum latency in {@link #getTimeUnit()}
+     */
+    public long getMaxLatency() {
+        return latencies.getMax();
+    }
+
+    /**
+     * The longest event on a channel
+     * @param channel the channel
+     * @return the maximum latency in {@link #getTimeUnit()}
+     */
+    public long getMaxLatency(T channel) {
+        return channelHistogram(channel).getMax();
+    }
+
+    /**
+     * The histogram of latencies across all channels, for other measures such as p50/p90/p99.9
+     * @return a copy of the aggregate histogram
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencies.copy();
+    }
+
+    /**
+     * The histogram of latencies on one channel
+     * @param channel the channel
+     * @return a copy of the channel's histogram
+     */
+    public LatencyHistogram getLatencyHistogram(T channel) {
+        return channelHistogram(channel).copy();
+    }
+
+    private LatencyHistogram channelHistogram(T channel) {
+        return Optional.ofNullable(channelLatencies.get(channel))
+                .orElseThrow(() -> new NoSuchElementException("No records for " + channel));
+    }
+
+    private static double fraction(long waitTime, double activeTime) {
+        return activeTime <= 0 ? 0 : Math.min(1.0d, waitTime / activeTime);
+    }
+
+    static double perSecond(long count, long period, TimeUnit timeUnit) {
+        if (period <= 0) {
+            return 0;
+        }
+        return count * (double) timeUnit.convert(1, TimeUnit.SECONDS) / period;
+    }
 }
@@ -2,33 +2,105 @@ package uk.org.webcompere.testgadgets.parallel.statistics;
 
 import static java.util.stream.Collectors.toMap;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Tracks the on-off statuses of a series of objects. Thread safe when receiving events.
+ * Tracks the on-off statuses of a series of objects. Thread safe when receiving events, as long
+ * as each channel is only written to by one thread at a time.
  * @param <T> events
  */
 public class EventTracking<T> {
+    /**
+     * The most windows statistics can be calculated for, to keep their memory reasonable
+     */
+    public static final int MAX_WINDOWS = 1_000_000;
+
     private Map<T, EventLog> eventTracking = new ConcurrentHashMap<>();
+    private final TimeSource timeSource;
+    private final EventRetention retention;
     private long endTime = -1;
     private long startTime = -1;
 
+    /**
+     * Construct with the default, millisecond wall clock, {@link TimeSource} - so explicit timestamps
+     * should come from {@link System#currentTimeMillis()}. Use {@link #EventTracking(TimeSource)} with
+     * {@link TimeSource#nanos()} for finer timing
+     */
+    public EventTracking() {
+        this(TimeSource.millis());
+    }
+
+    /**
+     * Construct with a specific time source
+     * @param timeSource the clock for events where no time is provided
+     */
+    public EventTracking(TimeSource timeSource) {
+        this(timeSource, EventRetention.all());
+    }
+
+    /**
+     * Construct with a specific time source and limit on the raw events kept for each channel
+     * @param timeSource the clock for events where no time is provided
+     * @param retention how many raw events each channel's log keeps
+     */
+    public EventTracking(TimeSource timeSource, EventRetention retention) {
+        this.timeSource = timeSource;
+        this.retention = retention;
+    }
+
+    /**
+     * The clock used for timing the events
+     * @return the time source
+     */
+    public TimeSource getTimeSource() {
+        return timeSource;
+    }
+
     /**
      * Record a channel starting
      * @param channel the channel that's starting
      */
     public void addStart(T channel) {
-        addStart(channel, System.currentTimeMillis());
+        addStart(channel, timeSource.now());
     }
 
     /**
      * Record a channel starting
      * @param channel the channel that's starting
-     * @param time the start timepoint
+     * @param time the start timepoint, in the unit of the {@link #getTimeSource()}
      */
     public void addStart(T channel, long time) {
-        eventTracking.computeIfAbsent(channel, c -> new EventLog()).addStart(time);
+        register(channel).addStart(time);
+    }
+
+    /**
+     * Get the log for a channel, creating it if necessary. This allows a caller which is the only writer
+     * for the channel to record directly into the log, without the lookup of {@link #addStart(Object)}.
+     * The log must not be written to by more than one thread at a time.
+     * @param channel the channel
+     * @return the log for the channel
+     */
+    public EventLog register(T channel) {
+        return eventTracking.computeIfAbsent(channel, c -> new EventLog(retention));
+    }
+
+    /**
+     * Find the log for a channel
+     * @param channel the channel
+     * @return the log, if the channel has been registered
+     */
+    public Optional<EventLog> getLog(T channel) {
+        return Optional.ofNullable(eventTracking.get(channel));
     }
 
     /**
@@ -36,16 +108,16 @@ public class EventTracking<T> {
      * @param channel the channel that's ending
      */
     public void addEnd(T channel) {
-        addEnd(channel, System.currentTimeMillis());
+        addEnd(channel, timeSource.now());
     }
 
     /**
      * Record a channel ending
      * @param channel the channel that's ending
-     * @param time the end timepoint
+     * @param time the end timepoint, in the unit of the {@link #getTimeSource()}
      */
     public void addEnd(T channel, long time) {
-        Optional.ofNullable(eventTracking.get(channel))
+        getLog(channel)
                 .filter(EventLog::isRunning)
                 .orElseThrow(() -> new IndexOutOfBoundsException("End provided for channel with no start"))
                 .addEnd(time);
@@ -55,12 +127,13 @@ public class EventTracking<T> {
      * Set a start point - this is optional. If left unstarted, the start time is taken as the earliest event.
      */
     public void start() {
-        start(System.currentTimeMillis());
+        start(timeSource.now());
     }
 
     /**
      * Set a start point - this is optional. If left unstarted, the start time is taken as the earliest event.
-     * @param atTime start time - set to -1 to mean earliest event (default)
+     * @param atTime start time, in the unit of the {@link #getTimeSource()} - set to -1 to mean earliest
+     * event (default)
      */
     public void start(long atTime) {
         startTime = atTime;
@@ -70,12 +143,12 @@ public class EventTracking<T> {
      * Set a stop time, which may, for utilization reasons, be later than the last event
      */
     public void stop() {
-        stop(System.currentTimeMillis());
+        stop(timeSource.now());
     }
 
     /**
      * Set a stop time, which may, for utilization reasons, be later than the last event
-     * @param endTime the time to set it
+     * @param endTime the time to set it - set to -1 to mean latest event (default)
      */
     public void stop(long endTime) {
         this.endTime = endTime;
@@ -102,82 +175,206 @@ public class EventTracking<T> {
      * @return a new {@link EventStatistics} object
      */
     public EventStatistics<T> calculateStatistics() {
+        return calculateStatistics(null);
+    }
+
+    /**
+     * Calculate all the statistics for a test to assert with, including a series of statistics
+     * for each fixed window of time
+     * @param window the length of each window - e.g. 100ms
+     * @return a new {@link EventStatistics} object
+     * @throws IllegalArgumentException if the window is not positive, or would divide the period into more
+     * than {@link #MAX_WINDOWS} windows
+     */
+    public EventStatistics<T> calculateStatistics(Duration window) {
+        if (window != null && (window.isZero() || window.isNegative())) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
         long minTime = startTime != -1 ? startTime : getEarliestEventStart();
         long maxTime = endTime != -1 ? endTime : getLatestEventEnd();
         if (maxTime == minTime) {
             maxTime++;
         }
 
-        EventLog.Timepoint<T>[] starts = getStarts();
-        EventLog.Timepoint<T>[] finishes = getFinishes();
+        long[] starts = getStarts();
+        long[] finishes = getFinishes();
 
         double largestDuration = (double) maxTime - minTime;
-        Map<T, Double> totalTimeSpentActive = gatherActivity(minTime, maxTime);
-        calculateUtilizations(totalTimeSpentActive, largestDuration);
+        Map<T, ChannelActivity> activity = gatherActivity();
+        Map<T, Double> totalTimeSpentActive = activity.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> (double) entry.getValue().getActiveTime()));
+        Map<T, Double> utilizations = new HashMap<>(totalTimeSpentActive);
+        calculateUtilizations(utilizations, largestDuration);
 
-        return new EventStatistics<>(totalTimeSpentActive, calcMaxConcurrency(starts, finishes), starts.length);
+        ConcurrencyProfile concurrencyProfile = ConcurrencyProfile.of(starts, finishes, minTime, maxTime);
+        EventStatistics<T> statistics = new EventStatistics<>(
+                        utilizations, concurrencyProfile.getPeakConcurrency(), totalEventCount())
+                .withTiming(timeSource.getTimeUnit(), maxTime - minTime, totalTimeSpentActive)
+                .withActivity(activity)
+                .withWaits(gatherWaits())
+                .withLatencies(gatherLatencies())
+                .withConcurrencyProfile(concurrencyProfile);
+
+        if (window != null) {
+            long windowLength = Math.max(1, timeSource.getTimeUnit().convert(window));
+            long period = maxTime - minTime;
+            long windowCount = period / windowLength + (period % windowLength == 0 ? 0 : 1);
+            if (windowCount > MAX_WINDOWS) {
+                throw new IllegalArgumentException("Window of " + window + " would need " + windowCount
+                        + " windows, more than the limit of " + MAX_WINDOWS + " - use a longer window");
+            }
+            statistics.withWindows(
+                    calculateWindows(starts, finishes, minTime, maxTime, windowLength, (int) windowCount));
+        }
+        return statistics;
+    }
+
+    /**
+     * Write the events out as a Chrome Trace Event JSON file, which can be opened in Perfetto or
+     * <code>chrome://tracing</code> to see the timeline of each channel. The events are streamed straight
+     * to the writer, so this should be done once the events have all been recorded
+     * @param writer the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        TraceExport.writeChromeTrace(eventTracking, timeSource.getTimeUnit(), writer);
+    }
+
+    /**
+     * Write the events out in a compact binary format, which can be read back with
+     * {@link #readBinary(InputStream)}
+     * @param output the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void writeBinary(OutputStream output) throws IOException {
+        TraceExport.writeBinary(
+                eventTracking, timeSource.getTimeUnit(), new DataOutputStream(new BufferedOutputStream(output)));
     }
 
-    private Map<T, Double> gatherActivity(long min, long max) {
+    /**
+     * Read events written by {@link #writeBinary(OutputStream)}, to calculate statistics or convert
+     * to another format
+     * @param input the source - not closed by this method
+     * @return the events, with the names of the original channels as the channels
+     * @throws IOException on error reading, or if the input is not in the right format
+     */
+    public static EventTracking<String> readBinary(InputStream input) throws IOException {
+        return TraceExport.readBinary(new DataInputStream(new BufferedInputStream(input)));
+    }
+
+    private Map<T, Long> gatherWaits() {
         return eventTracking.entrySet().stream()
-                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().totalActivityTime()));
+                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().getWaitTime()));
     }
 
-    private int calcMaxConcurrency(EventLog.Timepoint<T>[] starts, EventLog.Timepoint<T>[] finishes) {
-        Set<T> currentlyActive = new HashSet<>();
+    private Map<T, LatencyHistogram> gatherLatencies() {
+        return eventTracking.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().getLatencies().copy()));
+    }
 
+    private List<WindowStatistics> calculateWindows(
+            long[] starts, long[] finishes, long minTime, long maxTime, long windowLength, int windowCount) {
+        long[] completed = new long[windowCount];
+        int[] peaks = new int[windowCount];
+        double[] busyTime = new double[windowCount];
+
+        // sweep through the starts and finishes in time order, starts first on a tie
+        int active = 0;
+        long lastTime = minTime;
         int startsIndex = 0;
         int finishesIndex = 0;
-        EventLog.Timepoint<T> currentStart = starts[0];
-        currentlyActive.add(currentStart.getChannel());
-        int maxConcurrency = 1;
-        EventLog.Timepoint<T> currentFinish = finishes[0];
-
-        while (startsIndex < starts.length) {
-            // is the next start event
-            if (currentFinish == null
-                    || (startsIndex < starts.length - 1
-                            && starts[startsIndex + 1].getWhen() <= currentFinish.getWhen())) {
-                // move the starts forward
-                startsIndex++;
-                if (startsIndex < starts.length) {
-                    currentStart = starts[startsIndex];
-                    currentlyActive.add(currentStart.getChannel());
-                    maxConcurrency = Math.max(maxConcurrency, currentlyActive.size());
-                }
-            } else {
-                // process and increment the current finish
-                currentlyActive.remove(currentFinish.getChannel());
-                finishesIndex++;
-                if (finishesIndex < finishes.length - 1) {
-                    currentFinish = finishes[finishesIndex];
+        while (startsIndex < starts.length || finishesIndex < finishes.length) {
+            boolean isStart = finishesIndex == finishes.length
+                    || (startsIndex < starts.length && starts[startsIndex] <= finishes[finishesIndex]);
+            long when = isStart ? starts[startsIndex++] : finishes[finishesIndex++];
+
+            long until = Math.min(Math.max(when, minTime), maxTime);
+            accumulateBusyTime(busyTime, peaks, lastTime, until, active, minTime, windowLength);
+            lastTime = Math.max(lastTime, until);
+
+            active += isStart ? 1 : -1;
+            if (when >= minTime && when <= maxTime) {
+                int windowIndex = windowIndex(when, minTime, windowLength, windowCount);
+                if (isStart) {
+                    peaks[windowIndex] = Math.max(peaks[windowIndex], active);
                 } else {
-                    currentFinish = null;
+                    completed[windowIndex]++;
                 }
             }
         }
+        accumulateBusyTime(busyTime, peaks, lastTime, maxTime, active, minTime, windowLength);
+
+        int channelCount = Math.max(1, eventTracking.size());
+        List<WindowStatistics> windows = new ArrayList<>(windowCount);
+        for (int i = 0; i < windowCount; i++) {
+            long windowStart = minTime + i * windowLength;
+            long windowEnd = Math.min(windowStart + windowLength, maxTime);
+            windows.add(new WindowStatistics(
+                    windowStart,
+                    windowEnd,
+                    timeSource.getTimeUnit(),
+                    completed[i],
+                    peaks[i],
+                    busyTime[i] / ((double) (windowEnd - windowStart) * channelCount)));
+        }
+        return windows;
+    }
 
-        return maxConcurrency;
+    private static void accumulateBusyTime(
+            double[] busyTime, int[] peaks, long from, long to, int active, long minTime, long windowLength) {
+        long current = from;
+        while (current < to) {
+            int windowIndex = windowIndex(current, minTime, windowLength, busyTime.length);
+            long windowEnd = Math.min(minTime + (windowIndex + 1) * windowLength, to);
+            busyTime[windowIndex] += (double) active * (windowEnd - current);
+            peaks[windowIndex] = Math.max(peaks[windowIndex], active);
+            current = windowEnd;
+        }
+    }
+
+    private static int windowIndex(long when, long minTime, long windowLength, int windowCount) {
+        return (int) Math.min((when - minTime) / windowLength, windowCount - 1);
+    }
+
+    private Map<T, ChannelActivity> gatherActivity() {
+        return eventTracking.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().getActivity()));
+    }
+
+    private long[] getStarts() {
+        long[] starts = new long[countEvents()];
+        int offset = 0;
+        for (EventLog log : eventTracking.values()) {
+            offset = log.copyStarts(starts, offset);
+        }
+        Arrays.sort(starts);
+        return starts;
+    }
+
+    private long[] getFinishes() {
+        long[] finishes = new long[countEvents()];
+        int offset = 0;
+        for (EventLog log : eventTracking.values()) {
+            offset = log.copyFinishes(finishes, offset);
+        }
+        Arrays.sort(finishes);
+        return finishes;
     }
 
-    @SuppressWarnings("unchecked")
-    private EventLog.Timepoint<T>[] getStarts() {
-        return (EventLog.Timepoint<T>[]) eventTracking.entrySet().stream()
-                .flatMap(entry -> entry.getValue().getStarts(entry.getKey()))
-                .sorted()
-                .toArray(EventLog.Timepoint[]::new);
+    private int countEvents() {
+        return eventTracking.values().stream().mapToInt(EventLog::size).sum();
     }
 
-    @SuppressWarnings("unchecked")
-    private EventLog.Timepoint<T>[] getFinishes() {
-        return (EventLog.Timepoint<T>[]) eventTracking.entrySet().stream()
-                .flatMap(entry -> entry.getValue().getFinishes(entry.getKey()))
-                .sorted()
-                .toArray(EventLog.Timepoint[]::new);
+    private int totalEventCount() {
+        long total = eventTracking.values().stream()
+                .mapToLong(EventLog::getEventCount)
+                .sum();
+        return (int) Math.min(Integer.MAX_VALUE, total);
     }
 
     private long getEarliestEventStart() {
         return eventTracking.values().stream()
+                .filter(log -> log.getEventCount() > 0)
                 .mapToLong(EventLog::getEarliest)
                 .min()
                 .orElse(0);
@@ -185,6 +382,7 @@ public class EventTracking<T> {
 
     private long getLatestEventEnd() {
         return eventTracking.values().stream()
+                .filter(log -> log.getEventCount() > 0)
                 .mapToLong(EventLog::getLatest)
                 .max()
                 .orElse(0);
@@ -0,0 +1,68 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link TimeSource} which only moves when told to, for deterministic tests of timing.
+ * Thread safe.
+ */
+public class FakeTimeSource implements TimeSource {
+    private final AtomicLong time = new AtomicLong();
+    private final TimeUnit timeUnit;
+
+    /**
+     * Construct a fake clock in nanoseconds, starting at zero
+     */
+    public FakeTimeSource() {
+        this(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Construct a fake clock starting at zero
+     * @param timeUnit the unit of time the clock measures in
+     */
+    public FakeTimeSource(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+    @Override
+    public long now() {
+        return time.get();
+    }
+
+    @Override
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * Set the current time
+     * @param now the new time
+     * @return this for fluent calls
+     */
+    public FakeTimeSource set(long now) {
+        time.set(now);
+        return this;
+    }
+
+    /**
+     * Move the clock on
+     * @param amount the amount, in {@link #getTimeUnit()}, to advance by
+     * @return this for fluent calls
+     */
+    public FakeTimeSource advance(long amount) {
+        time.addAndGet(amount);
+        return this;
+    }
+
+    /**
+     * Move the clock on
+     * @param duration how far to advance - truncated to the {@link #getTimeUnit()}
+     * @return this for fluent calls
+     */
+    public FakeTimeSource advance(Duration duration) {
+        return advance(timeUnit.convert(duration));
+    }
+}
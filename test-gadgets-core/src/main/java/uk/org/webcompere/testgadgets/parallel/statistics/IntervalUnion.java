@@ -0,0 +1,85 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+/**
+ * Merges intervals into their union as they're added, keeping only the current run of overlapping
+ * intervals and the totals of the runs before it. Exact when intervals are added in order of their start,
+ * otherwise an interval which falls before the current run is counted as active without being merged
+ */
+class IntervalUnion {
+    private long closedActiveTime;
+    private long idleTime;
+    private long idleGaps;
+    private long longestIdleGap;
+    private boolean hasRun;
+    private long runStart;
+    private long runEnd;
+    private long lastStart = Long.MIN_VALUE;
+    private boolean inStartOrder = true;
+
+    /**
+     * Add an interval
+     * @param start the start of the interval
+     * @param end the end of the interval, which must not be before the start
+     */
+    void add(long start, long end) {
+        if (start < lastStart) {
+            inStartOrder = false;
+        }
+        lastStart = Math.max(lastStart, start);
+
+        if (!hasRun) {
+            hasRun = true;
+            runStart = start;
+            runEnd = end;
+        } else if (start > runEnd) {
+            long gap = start - runEnd;
+            idleTime += gap;
+            idleGaps++;
+            longestIdleGap = Math.max(longestIdleGap, gap);
+            closedActiveTime += runEnd - runStart;
+            runStart = start;
+            runEnd = end;
+        } else if (end < runStart) {
+            // an earlier interval which doesn't touch the current run
+            closedActiveTime += end - start;
+        } else {
+            runStart = Math.min(runStart, start);
+            runEnd = Math.max(runEnd, end);
+        }
+    }
+
+    /**
+     * Have the intervals all been added in order of their start, so the union is exact
+     * @return true if the union is exact
+     */
+    boolean isExact() {
+        return inStartOrder;
+    }
+
+    /**
+     * Copy the union so far, e.g. to add an unfinished interval to it
+     * @return a copy
+     */
+    IntervalUnion copy() {
+        IntervalUnion copy = new IntervalUnion();
+        copy.closedActiveTime = closedActiveTime;
+        copy.idleTime = idleTime;
+        copy.idleGaps = idleGaps;
+        copy.longestIdleGap = longestIdleGap;
+        copy.hasRun = hasRun;
+        copy.runStart = runStart;
+        copy.runEnd = runEnd;
+        copy.lastStart = lastStart;
+        copy.inStartOrder = inStartOrder;
+        return copy;
+    }
+
+    /**
+     * Summarise the union
+     * @return the activity
+     */
+    ChannelActivity toActivity() {
+        long activeTime = closedActiveTime + (hasRun ? runEnd - runStart : 0);
+        return new ChannelActivity(activeTime, idleTime, idleGaps, longestIdleGap);
+    }
+}
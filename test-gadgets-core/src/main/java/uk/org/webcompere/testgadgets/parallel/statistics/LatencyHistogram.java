@@ -0,0 +1,139 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.util.Arrays;
+
+/**
+ * A log-bucketed histogram of latencies, in the style of HDR Histogram. Values below 64 are counted
+ * exactly; above that each power of two is split into 32 buckets, so any percentile is reported to
+ * within about 3% of the true value, while the histogram stays small no matter how many values are
+ * recorded. The buckets are allocated as larger values arrive. Not thread safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    private long[] counts = new long[0];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double total;
+
+    /**
+     * Record a value
+     * @param value the latency - negative values are recorded as zero
+     */
+    public void record(long value) {
+        long safeValue = Math.max(0, value);
+        int index = indexOf(safeValue);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + HALF_SUB_BUCKET_COUNT));
+        }
+        counts[index]++;
+        totalCount++;
+        total += safeValue;
+        min = Math.min(min, safeValue);
+        max = Math.max(max, safeValue);
+    }
+
+    /**
+     * Add all the values from another histogram to this one
+     * @param other the other histogram
+     * @return this for fluent calls
+     */
+    public LatencyHistogram add(LatencyHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        total += other.total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * Create an independent copy of this histogram
+     * @return a new histogram with the same values
+     */
+    public LatencyHistogram copy() {
+        return new LatencyHistogram().add(this);
+    }
+
+    /**
+     * How many values have been recorded
+     * @return the count of values
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * The largest value recorded - this is exact
+     * @return the maximum, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * The smallest value recorded - this is exact
+     * @return the minimum, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    /**
+     * The mean of the values recorded - this is exact
+     * @return the mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : total / totalCount;
+    }
+
+    /**
+     * Find the value which the given proportion of recorded values are at or below
+     * @param percentile the percentile as a fraction - e.g. <code>0.99</code> for p99
+     * @return the value at that percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be between 0.0 and 1.0: " + percentile);
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Math.max(highestValueAt(i), min), max);
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + (subBucket - HALF_SUB_BUCKET_COUNT);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,121 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running counters of events, kept up to date as events start and end, so a cheap
+ * {@link MeterSnapshot} can be taken while a test is running. The latencies are gathered into
+ * histograms striped by thread, so threads ending events rarely contend. The stripes are merged and
+ * reset at each snapshot, so each snapshot has the latencies since the previous one.
+ */
+public class LiveCounters {
+    private static final int MAX_STRIPES = 64;
+
+    private final TimeSource timeSource;
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakConcurrency = new AtomicInteger();
+    private final Stripe[] stripes = createStripes();
+    private long intervalStart;
+    private long completedBeforeInterval;
+
+    /**
+     * Construct with the clock used to time the events
+     * @param timeSource the clock
+     */
+    public LiveCounters(TimeSource timeSource) {
+        this.timeSource = timeSource;
+        this.intervalStart = timeSource.now();
+    }
+
+    /**
+     * Count an event starting
+     */
+    public void started() {
+        started.increment();
+        int current = inFlight.incrementAndGet();
+        if (current > peakConcurrency.get()) {
+            peakConcurrency.accumulateAndGet(current, Math::max);
+        }
+    }
+
+    /**
+     * Count an event ending
+     * @param latency how long the event took
+     */
+    public void ended(long latency) {
+        inFlight.decrementAndGet();
+        stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)].record(latency);
+        completed.increment();
+    }
+
+    /**
+     * Count an event which was abandoned without a time for its end - e.g. when a thread starts
+     * another event before ending the last
+     */
+    public void abandoned() {
+        inFlight.decrementAndGet();
+        completed.increment();
+    }
+
+    /**
+     * Take a snapshot of the counters, and start a new interval for the latencies
+     * @return the snapshot
+     */
+    public synchronized MeterSnapshot snapshot() {
+        long now = timeSource.now();
+        long completedNow = completed.sum();
+
+        MeterSnapshot snapshot = new MeterSnapshot(
+                now,
+                timeSource.getTimeUnit(),
+                started.sum(),
+                completedNow,
+                inFlight.get(),
+                peakConcurrency.get(),
+                now - intervalStart,
+                completedNow - completedBeforeInterval,
+                drainLatencies());
+
+        intervalStart = now;
+        completedBeforeInterval = completedNow;
+        return snapshot;
+    }
+
+    private LatencyHistogram drainLatencies() {
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (Stripe stripe : stripes) {
+            stripe.drainInto(latencies);
+        }
+        return latencies;
+    }
+
+    private static Stripe[] createStripes() {
+        // a power of two, so a thread's stripe can be found with a mask
+        int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2);
+        Stripe[] stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    /**
+     * One of the histograms the latencies are recorded into, locked only by the threads which share it
+     * and by {@link #snapshot()}
+     */
+    private static final class Stripe {
+        private LatencyHistogram latencies = new LatencyHistogram();
+
+        synchronized void record(long latency) {
+            latencies.record(latency);
+        }
+
+        synchronized void drainInto(LatencyHistogram target) {
+            target.add(latencies);
+            latencies = new LatencyHistogram();
+        }
+    }
+}
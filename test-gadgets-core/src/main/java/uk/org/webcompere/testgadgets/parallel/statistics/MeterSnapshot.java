@@ -0,0 +1,134 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POJO to hold the state of a meter's live counters at a moment during a test. The interval is the
+ * time since the previous snapshot, or since the counters began.
+ */
+public class MeterSnapshot {
+    private final long time;
+    private final TimeUnit timeUnit;
+    private final long startedEvents;
+    private final long completedEvents;
+    private final int inFlight;
+    private final int peakConcurrency;
+    private final long interval;
+    private final long intervalCompletedEvents;
+    private final LatencyHistogram intervalLatencies;
+
+    /**
+     * Construct with the counter values
+     * @param time when the snapshot was taken
+     * @param timeUnit the unit of the times
+     * @param startedEvents the number of events started so far
+     * @param completedEvents the number of events completed so far
+     * @param inFlight the number of events running now
+     * @param peakConcurrency the highest number of events running at once so far
+     * @param interval the length of the interval
+     * @param intervalCompletedEvents the number of events completed in the interval
+     * @param intervalLatencies the latencies of the events completed in the interval - no longer written to
+     */
+    @SuppressFBWarnings("EI2")
+    public MeterSnapshot(
+            long time,
+            TimeUnit timeUnit,
+            long startedEvents,
+            long completedEvents,
+            int inFlight,
+            int peakConcurrency,
+            long interval,
+            long intervalCompletedEvents,
+            LatencyHistogram intervalLatencies) {
+        this.time = time;
+        this.timeUnit = timeUnit;
+        this.startedEvents = startedEvents;
+        this.completedEvents = completedEvents;
+        this.inFlight = inFlight;
+        this.peakConcurrency = peakConcurrency;
+        this.interval = interval;
+        this.intervalCompletedEvents = intervalCompletedEvents;
+        this.intervalLatencies = intervalLatencies;
+    }
+
+    /**
+     * When the snapshot was taken
+     * @return time in {@link #getTimeUnit()}
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * The unit of the times in this snapshot
+     * @return the time unit
+     */
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * How many events have started
+     * @return the count of events started
+     */
+    public long getStartedEvents() {
+        return startedEvents;
+    }
+
+    /**
+     * How many events have completed
+     * @return the count of events completed
+     */
+    public long getCompletedEvents() {
+        return completedEvents;
+    }
+
+    /**
+     * How many events were running when the snapshot was taken - the current concurrency
+     * @return the events in flight
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * The highest concurrency reached so far
+     * @return the peak number of events running at once
+     */
+    public int getPeakConcurrency() {
+        return peakConcurrency;
+    }
+
+    /**
+     * The length of the interval since the previous snapshot
+     * @return the interval in {@link #getTimeUnit()}
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * How many events completed in the interval
+     * @return the count of events
+     */
+    public long getIntervalCompletedEvents() {
+        return intervalCompletedEvents;
+    }
+
+    /**
+     * The rate at which events completed in the interval
+     * @return events per second
+     */
+    public double getIntervalThroughput() {
+        return EventStatistics.perSecond(intervalCompletedEvents, interval, timeUnit);
+    }
+
+    /**
+     * The latencies of the events which completed in the interval
+     * @return a copy of the histogram
+     */
+    public LatencyHistogram getIntervalLatencies() {
+        return intervalLatencies.copy();
+    }
+}
@@ -0,0 +1,70 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The clock used to timestamp events. Timestamps are in the {@link #getTimeUnit()} of the source and
+ * are only meaningful relative to each other. They should not be negative, as <code>-1</code> is used
+ * as a marker for "not set".
+ */
+public interface TimeSource {
+    /**
+     * The current time
+     * @return the time now, in {@link #getTimeUnit()}
+     */
+    long now();
+
+    /**
+     * The unit of the times returned
+     * @return the time unit
+     */
+    TimeUnit getTimeUnit();
+
+    /**
+     * Convert an amount of time from this source into a {@link Duration}
+     * @param amount the amount of time in {@link #getTimeUnit()}
+     * @return the equivalent duration
+     */
+    default Duration toDuration(long amount) {
+        return Duration.of(amount, getTimeUnit().toChronoUnit());
+    }
+
+    /**
+     * The default time source - nanosecond resolution, starting from zero when created
+     * @return a new nanosecond time source
+     */
+    static TimeSource nanos() {
+        long origin = System.nanoTime();
+        return of(TimeUnit.NANOSECONDS, () -> System.nanoTime() - origin);
+    }
+
+    /**
+     * The wall clock in milliseconds
+     * @return a millisecond time source
+     */
+    static TimeSource millis() {
+        return of(TimeUnit.MILLISECONDS, System::currentTimeMillis);
+    }
+
+    /**
+     * Create a time source from any clock
+     * @param timeUnit the unit the clock measures in
+     * @param clock the clock
+     * @return a new time source
+     */
+    static TimeSource of(TimeUnit timeUnit, LongSupplier clock) {
+        return new TimeSource() {
+            @Override
+            public long now() {
+                return clock.getAsLong();
+            }
+
+            @Override
+            public TimeUnit getTimeUnit() {
+                return timeUnit;
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the events of an {@link EventTracking} out as a timeline, streaming each event straight from
+ * the {@link EventLog}s. The formats are:
+ * <ul>
+ *     <li>Chrome Trace Event JSON - which can be opened in Perfetto or <code>chrome://tracing</code>,
+ *     with each channel as a thread and each event as a complete ("X") event</li>
+ *     <li>A compact binary format - the int <code>MAGIC</code> and <code>VERSION</code>, the UTF name of
+ *     the time unit and the int number of channels. Then for each channel, its UTF name, the int number
+ *     of events, and the long start and end of each event, where an end of -1 means not ended.</li>
+ * </ul>
+ */
+class TraceExport {
+    static final int MAGIC = 0x54474556;
+    static final int VERSION = 1;
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private TraceExport() {}
+
+    static void writeChromeTrace(Map<?, EventLog> logs, TimeUnit timeUnit, Writer writer) throws IOException {
+        writer.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        int threadId = 0;
+        for (Map.Entry<?, EventLog> channel : logs.entrySet()) {
+            threadId++;
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+            writer.write(Integer.toString(threadId));
+            writer.write(",\"args\":{\"name\":\"");
+            writeEscaped(channelName(channel.getKey()), writer);
+            writer.write("\"}}");
+
+            EventLog log = channel.getValue();
+            for (int i = 0; i < log.size(); i++) {
+                long start = log.getStart(i);
+                long end = log.getEnd(i);
+                long duration = end == -1 || end == start ? 1 : end - start;
+
+                writer.write(",\n{\"name\":\"event\",\"ph\":\"X\",\"pid\":1,\"tid\":");
+                writer.write(Integer.toString(threadId));
+                writer.write(",\"ts\":");
+                writeMicros(timeUnit.toNanos(start), writer);
+                writer.write(",\"dur\":");
+                writeMicros(timeUnit.toNanos(duration), writer);
+                writer.write('}');
+            }
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    static void writeBinary(Map<?, EventLog> logs, TimeUnit timeUnit, DataOutputStream output)
+            throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeUTF(timeUnit.name());
+        output.writeInt(logs.size());
+        for (Map.Entry<?, EventLog> channel : logs.entrySet()) {
+            EventLog log = channel.getValue();
+            output.writeUTF(channelName(channel.getKey()));
+            output.writeInt(log.size());
+            for (int i = 0; i < log.size(); i++) {
+                output.writeLong(log.getStart(i));
+                output.writeLong(log.getEnd(i));
+            }
+        }
+        output.flush();
+    }
+
+    static EventTracking<String> readBinary(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not an event recording");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported event recording version: " + version);
+        }
+        TimeUnit timeUnit = TimeUnit.valueOf(input.readUTF());
+        EventTracking<String> tracking = new EventTracking<>(TimeSource.of(timeUnit, () -> 0L));
+
+        int channels = input.readInt();
+        for (int channel = 0; channel < channels; channel++) {
+            EventLog log = tracking.register(input.readUTF());
+            int events = input.readInt();
+            for (int i = 0; i < events; i++) {
+                // channels with the same name, e.g. threads, are merged into one log
+                long start = input.readLong();
+                long end = input.readLong();
+                if (end == -1) {
+                    log.addStart(start);
+                } else {
+                    log.addEvent(start, end);
+                }
+            }
+        }
+        return tracking;
+    }
+
+    private static String channelName(Object channel) {
+        return channel instanceof Thread ? ((Thread) channel).getName() : String.valueOf(channel);
+    }
+
+    private static void writeMicros(long nanos, Writer writer) throws IOException {
+        writer.write(Long.toString(nanos / NANOS_PER_MICRO));
+        long fraction = nanos % NANOS_PER_MICRO;
+        if (fraction != 0) {
+            writer.write('.');
+            writer.write(Long.toString(NANOS_PER_MICRO + fraction).substring(1));
+        }
+    }
+
+    private static void writeEscaped(String value, Writer writer) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character == '"' || character == '\\') {
+                writer.write('\\');
+                writer.write(character);
+            } else if (character < ' ') {
+                writer.write(String.format("\\u%04x", (int) character));
+            } else {
+                writer.write(character);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POJO to hold the statistics for one fixed window of time within a test
+ */
+public class WindowStatistics {
+    private final long start;
+    private final long end;
+    private final TimeUnit timeUnit;
+    private final long completedEvents;
+    private final int maxConcurrency;
+    private final double utilization;
+
+    /**
+     * Construct with window data
+     * @param start the start of the window (inclusive)
+     * @param end the end of the window (exclusive)
+     * @param timeUnit the unit of start and end
+     * @param completedEvents the number of events which ended in the window
+     * @param maxConcurrency the maximum number of overlapping events in the window
+     * @param utilization the proportion of the window for which the channels were active
+     */
+    public WindowStatistics(
+            long start, long end, TimeUnit timeUnit, long completedEvents, int maxConcurrency, double utilization) {
+        this.start = start;
+        this.end = end;
+        this.timeUnit = timeUnit;
+        this.completedEvents = completedEvents;
+        this.maxConcurrency = maxConcurrency;
+        this.utilization = utilization;
+    }
+
+    /**
+     * When the window starts
+     * @return start time in {@link #getTimeUnit()}
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * When the window ends - the last window may be shorter than the others
+     * @return end time in {@link #getTimeUnit()}
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * The unit of the window's times
+     * @return the time unit
+     */
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * How many events ended in this window
+     * @return the count of events
+     */
+    public long getCompletedEvents() {
+        return completedEvents;
+    }
+
+    /**
+     * The rate at which events completed in this window
+     * @return events per second
+     */
+    public double getThroughput() {
+        return EventStatistics.perSecond(completedEvents, end - start, timeUnit);
+    }
+
+    /**
+     * The peak concurrency during this window
+     * @return the maximum number of overlapping events
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * The average utilization across all channels during this window
+     * @return 0.0 - 1.0
+     */
+    public double getUtilization() {
+        return utilization;
+    }
+}
@@ -0,0 +1,76 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A report of the attempts made by one call to a {@link Retryer} - to find the checks which cost the
+ * most time. Receive these with {@link Retryer#onAttempts(java.util.function.Consumer)}.
+ */
+public class Attempts {
+    private final List<Duration> latencies = new ArrayList<>();
+    private Duration waiting = Duration.ZERO;
+    private Duration elapsed = Duration.ZERO;
+    private boolean succeeded;
+
+    void attempted(Duration latency) {
+        latencies.add(latency);
+    }
+
+    void waited(Duration wait) {
+        waiting = waiting.plus(wait);
+    }
+
+    void finished(Duration elapsed, boolean succeeded) {
+        this.elapsed = elapsed;
+        this.succeeded = succeeded;
+    }
+
+    /**
+     * How many attempts were made
+     * @return the number of attempts
+     */
+    public int getCount() {
+        return latencies.size();
+    }
+
+    /**
+     * How long each attempt took
+     * @return the latency of each attempt, in order
+     */
+    public List<Duration> getLatencies() {
+        return Collections.unmodifiableList(latencies);
+    }
+
+    /**
+     * The total time from the first attempt starting to the retryer finishing
+     * @return the elapsed time
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * The time spent waiting between attempts, rather than attempting
+     * @return the total wait
+     */
+    public Duration getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Did the retries end in success
+     * @return true if an attempt succeeded
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    @Override
+    public String toString() {
+        return "Attempts{count=" + getCount() + ", elapsed=" + elapsed + ", waiting=" + waiting + ", succeeded="
+                + succeeded + "}";
+    }
+}
@@ -0,0 +1,95 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long the {@link Retryer} waits before each retry. Growing the wait lets a polling test
+ * check quickly at first, without hammering the system under test if it takes longer to get there.
+ */
+@FunctionalInterface
+public interface Backoff {
+    /**
+     * Work out the wait before the next retry
+     * @param retry which retry this is - 1 for the wait after the first attempt
+     * @param previous the previous wait, or {@link Duration#ZERO} before the first retry
+     * @return how long to wait
+     */
+    Duration delay(int retry, Duration previous);
+
+    /**
+     * The same wait before every retry
+     * @param delay the wait
+     * @return the backoff
+     */
+    static Backoff fixed(Duration delay) {
+        return (retry, previous) -> delay;
+    }
+
+    /**
+     * Double the wait before each retry, up to a cap
+     * @param initial the first wait
+     * @param cap the longest wait
+     * @return the backoff
+     */
+    static Backoff exponential(Duration initial, Duration cap) {
+        return exponential(initial, 2, cap);
+    }
+
+    /**
+     * Multiply the wait before each retry, up to a cap
+     * @param initial the first wait
+     * @param multiplier how much to multiply the wait by each time - e.g. <code>1.5</code>
+     * @param cap the longest wait
+     * @return the backoff
+     */
+    static Backoff exponential(Duration initial, double multiplier, Duration cap) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier must be at least 1: " + multiplier);
+        }
+        return (retry, previous) -> {
+            double nanos = initial.toNanos() * Math.pow(multiplier, retry - 1.0d);
+            return capped(nanos, cap);
+        };
+    }
+
+    /**
+     * Grow the wait in the Fibonacci sequence - 1, 1, 2, 3, 5... times the unit - up to a cap. This grows
+     * more gently than {@link #exponential(Duration, Duration)}
+     * @param unit the first wait
+     * @param cap the longest wait
+     * @return the backoff
+     */
+    static Backoff fibonacci(Duration unit, Duration cap) {
+        return (retry, previous) -> {
+            double current = 1;
+            double next = 1;
+            for (int i = 1; i < retry && current * unit.toNanos() < cap.toNanos(); i++) {
+                double following = current + next;
+                current = next;
+                next = following;
+            }
+            return capped(current * unit.toNanos(), cap);
+        };
+    }
+
+    /**
+     * A random wait between the base and three times the previous wait, up to a cap. The randomness stops
+     * many tests polling the same system from retrying in step with each other
+     * @param base the shortest wait
+     * @param cap the longest wait
+     * @return the backoff
+     */
+    static Backoff decorrelatedJitter(Duration base, Duration cap) {
+        return (retry, previous) -> {
+            long lowest = base.toNanos();
+            long highest = Math.max(lowest, previous.toNanos() * 3);
+            long nanos = lowest == highest ? lowest : ThreadLocalRandom.current().nextLong(lowest, highest + 1);
+            return capped(nanos, cap);
+        };
+    }
+
+    private static Duration capped(double nanos, Duration cap) {
+        return nanos >= cap.toNanos() ? cap : Duration.ofNanos((long) nanos);
+    }
+}
@@ -0,0 +1,82 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+
+/**
+ * Tells a {@link Retryer} that the state it is checking may have changed, so it can try again straight
+ * away instead of polling. Call {@link #signal()} wherever the state changes - e.g. in a listener, or
+ * after putting to a queue - or create the signal with {@link #listeningTo(Consumer)} to register it
+ * as a listener. Where the system under test takes a queue or a condition, give it one wrapped by
+ * {@link #signalling(BlockingQueue)} or {@link #signalling(Condition)}.
+ */
+public class ChangeSignal {
+    private long version;
+
+    /**
+     * Create a signal which is registered with a listener hook
+     * @param registration registers a listener with the system under test - e.g. <code>cache::onChange</code>
+     * @return a signal which is signalled whenever the listener is called
+     */
+    public static ChangeSignal listeningTo(Consumer<Runnable> registration) {
+        ChangeSignal signal = new ChangeSignal();
+        registration.accept(signal::signal);
+        return signal;
+    }
+
+    /**
+     * Wrap a queue so that this is signalled whenever an element is added to or removed from it
+     * @param queue the queue to wrap
+     * @param <E> the type of element
+     * @return a queue which writes through to the original, signalling each change made through it
+     */
+    public <E> BlockingQueue<E> signalling(BlockingQueue<E> queue) {
+        return new SignallingQueue<>(queue, this);
+    }
+
+    /**
+     * Wrap a condition so that this is signalled whenever the condition is
+     * @param condition the condition to wrap - e.g. from <code>lock.newCondition()</code>
+     * @return a condition which signals both the original condition and this
+     */
+    public Condition signalling(Condition condition) {
+        return new SignallingCondition(condition, this);
+    }
+
+    /**
+     * Signal that the state has changed, waking anything waiting for a change
+     */
+    public synchronized void signal() {
+        version++;
+        notifyAll();
+    }
+
+    /**
+     * The number of times the signal has been signalled - to wait for a change since then
+     * @return the version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Wait for the signal to change from a version
+     * @param fromVersion the version from {@link #getVersion()} before the state was last checked
+     * @param timeout the longest time to wait
+     * @return true if signalled, false if the timeout passed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean awaitChange(long fromVersion, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (version == fromVersion) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+        }
+        return true;
+    }
+}
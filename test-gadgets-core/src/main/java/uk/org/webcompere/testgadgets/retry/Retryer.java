@@ -1,8 +1,18 @@
 package uk.org.webcompere.testgadgets.retry;
 
 import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import uk.org.webcompere.testgadgets.ThrowingRunnable;
+import uk.org.webcompere.testgadgets.parallel.WorkerThreadFactory;
 
 /**
  * Wrap around test code that may need to be retried a few times in order to work. This
@@ -12,7 +22,10 @@ import uk.org.webcompere.testgadgets.ThrowingRunnable;
  * Use the overloads of {@link Retryer#retryer} function to wrap around something that returns a value
  * or just does something. Use {@link Retryer#repeat()} to create the retries profile. There
  * is a default number of tries and {@link Duration} to sleep between tries, but this can be updated
- * with {@link Retries#waitBetween(Duration)} and {@link Retries#sleepBetween}
+ * with {@link Retries#times(int)} and {@link Retries#waitBetween(Duration)}, or a growing wait set with
+ * {@link Retries#backoff(Backoff)}. {@link Retries#within(Duration)} limits the total time spent retrying.<br>
+ * {@link Retryer#retryAsync(Callable)} retries without blocking the caller, by scheduling each attempt, and
+ * {@link Retryer#retryOnChange(Callable, ChangeSignal)} retries when a {@link ChangeSignal} says the state changed.
  */
 public final class Retryer {
     private static final Duration DEFAULT_DURATION = Duration.ofMillis(50);
@@ -25,6 +38,10 @@ public final class Retryer {
     public static class Retries {
         private int maxTimes;
         private Duration sleepBetween;
+        private Backoff backoff;
+        private Duration deadline;
+        private Predicate<Throwable> retryOn = Retryer::isRecoverable;
+        private Consumer<Attempts> attemptsListener;
 
         /**
          * Construct a retries object
@@ -34,6 +51,7 @@ public final class Retryer {
         public Retries(int maxTimes, Duration sleepBetween) {
             this.maxTimes = maxTimes;
             this.sleepBetween = sleepBetween;
+            this.backoff = Backoff.fixed(sleepBetween);
         }
 
         int getMaxTimes() {
@@ -44,6 +62,22 @@ public final class Retryer {
             return sleepBetween;
         }
 
+        Backoff getBackoff() {
+            return backoff;
+        }
+
+        Duration getDeadline() {
+            return deadline;
+        }
+
+        Predicate<Throwable> getRetryOn() {
+            return retryOn;
+        }
+
+        Consumer<Attempts> getAttemptsListener() {
+            return attemptsListener;
+        }
+
         /**
          * Fluent setter of the maximum number of times for the retry
          * @param maxTimes maximum number of attempts
@@ -61,10 +95,68 @@ public final class Retryer {
          */
         public Retries waitBetween(Duration sleepBetween) {
             this.sleepBetween = sleepBetween;
+            this.backoff = Backoff.fixed(sleepBetween);
+            return this;
+        }
+
+        /**
+         * Fluent setter of a strategy for the wait before each retry - e.g.
+         * {@link Backoff#exponential(Duration, Duration)}. Replaces {@link #waitBetween(Duration)}
+         * @param backoff the backoff strategy
+         * @return this
+         */
+        public Retries backoff(Backoff backoff) {
+            this.backoff = backoff;
+            return this;
+        }
+
+        /**
+         * Fluent setter of the time budget for all the attempts. Once it runs out, there are no more retries,
+         * however many attempts are left. Combine with a high {@link #times(int)} to retry only until a deadline
+         * @param deadline the most time to spend, from the first attempt starting
+         * @return this
+         */
+        public Retries within(Duration deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        /**
+         * Fluent setter of which errors to retry - others are thrown straight away. The default is to retry
+         * any error except a {@link VirtualMachineError}, such as {@link OutOfMemoryError}, or a
+         * {@link LinkageError}, as trying again won't fix those
+         * @param retryOn returns true for an error which should be retried - e.g.
+         * <code>AssertionError.class::isInstance</code>
+         * @return this
+         */
+        public Retries retryOn(Predicate<Throwable> retryOn) {
+            this.retryOn = retryOn;
+            return this;
+        }
+
+        /**
+         * Fluent setter of a listener to receive an {@link Attempts} report when each retry finishes, whether
+         * it succeeded or not. An error thrown by the listener is passed to the caller, and is never retried
+         * @param attemptsListener receives the reports - must be thread safe if the retries are shared
+         * @return this
+         */
+        public Retries onAttempts(Consumer<Attempts> attemptsListener) {
+            this.attemptsListener = attemptsListener;
             return this;
         }
     }
 
+    /**
+     * The error for a result which is not ready yet, when retrying until a result matches
+     */
+    private static final class UnmatchedResult extends AssertionError {
+        private static final long serialVersionUID = 1L;
+
+        UnmatchedResult(Object result) {
+            super("Result did not match: " + result);
+        }
+    }
+
     /**
      * Construct with the retries to use
      * @param retries the retry strategy configuration
@@ -134,24 +226,133 @@ public final class Retryer {
      * @throws Exception on any error that escapes retries
      */
     public <T> T retry(Callable<T> operation) throws Exception {
-        int maxTimes = retries.getMaxTimes();
-        for (int i = 0; i < maxTimes; i++) {
+        long startTime = System.nanoTime();
+        Attempts attempts = new Attempts();
+        Duration delay = Duration.ZERO;
+        for (int attempt = 1; ; attempt++) {
+            long attemptStart = System.nanoTime();
+            T result;
             try {
-                return operation.call();
+                result = operation.call();
             } catch (Throwable e) { // NOSONAR
+                attempts.attempted(since(attemptStart));
+                delay = retries.getBackoff().delay(attempt, delay);
+                Optional<Duration> wait = waitBeforeRetry(e, attempt, delay, startTime);
                 // if at the limit, then throw
-                if (i == (maxTimes - 1)) {
+                if (wait.isEmpty()) {
+                    report(attempts, startTime, false);
                     throw e;
-                } else {
-                    try {
-                        Thread.sleep(retries.getSleepBetween().toMillis());
-                    } catch (InterruptedException ie) {
-                        // ignore this
-                    }
                 }
+                long waitStart = System.nanoTime();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait.get().toNanos());
+                } catch (InterruptedException ie) {
+                    // stop retrying, leaving the interrupt for the caller
+                    Thread.currentThread().interrupt();
+                    report(attempts, startTime, false);
+                    throw e;
+                } finally {
+                    attempts.waited(since(waitStart));
+                }
+                continue;
             }
+
+            // reported outside the try, so an error from the listener isn't taken for a failed attempt
+            attempts.attempted(since(attemptStart));
+            report(attempts, startTime, true);
+            return result;
+        }
+    }
+
+    /**
+     * Retry an operation until it returns a result which matches - e.g. for polling something which
+     * returns a value that isn't ready yet
+     * @param operation to run
+     * @param until returns true for a result which is ready
+     * @param <T> the type of value returned by the operation
+     * @return the first result which matched
+     * @throws Exception on any error that escapes retries, or an {@link AssertionError} if the last
+     * result did not match
+     */
+    public <T> T retryUntil(Callable<T> operation, Predicate<? super T> until) throws Exception {
+        return retry(matching(operation, until));
+    }
+
+    /**
+     * Retry an operation each time a signal says the state it checks has changed, rather than after a
+     * wait. This is as fast as the system under test, with no polling. The attempts are limited by
+     * {@link #times(int)} and by the deadline, which must be set with {@link #within(Duration)} - set a high
+     * number of times to retry only until the deadline
+     * @param operation to run
+     * @param signal signalled when the state may have changed
+     * @param <T> the type of value returned by the operation
+     * @return whatever the callable returns on success
+     * @throws Exception on any error that escapes retries
+     */
+    public <T> T retryOnChange(Callable<T> operation, ChangeSignal signal) throws Exception {
+        if (retries.getDeadline() == null) {
+            throw new IllegalStateException("Set a deadline with within() to retry on change");
         }
-        throw new RuntimeException("Should not reach this point - overshot the max retries");
+        long startTime = System.nanoTime();
+        Attempts attempts = new Attempts();
+        for (int attempt = 1; ; attempt++) {
+            // take the version before trying, so a change during the attempt is not missed
+            long version = signal.getVersion();
+            long attemptStart = System.nanoTime();
+            T result;
+            try {
+                result = operation.call();
+            } catch (Throwable e) { // NOSONAR
+                attempts.attempted(since(attemptStart));
+                Duration remaining = remainingTime(startTime);
+                if (attempt >= retries.getMaxTimes() || remaining.isZero() || !shouldRetry(e)) {
+                    report(attempts, startTime, false);
+                    throw e;
+                }
+                long waitStart = System.nanoTime();
+                try {
+                    signal.awaitChange(version, remaining);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    report(attempts, startTime, false);
+                    throw e;
+                } finally {
+                    attempts.waited(since(waitStart));
+                }
+                continue;
+            }
+
+            attempts.attempted(since(attemptStart));
+            report(attempts, startTime, true);
+            return result;
+        }
+    }
+
+    /**
+     * Retry an operation without blocking. The attempts are scheduled on a small shared pool of daemon
+     * threads, so many retries can be waiting at once, but the operation should be quick and not block.
+     * Use {@link #retryAsync(Callable, ScheduledExecutorService)} for operations which may block
+     * @param operation to run
+     * @param <T> the type of value returned by the operation
+     * @return a future of whatever the callable returns on success, or completed with the error which
+     * escaped the retries. Cancelling it stops further attempts
+     */
+    public <T> CompletableFuture<T> retryAsync(Callable<T> operation) {
+        return retryAsync(operation, SharedScheduler.SCHEDULER);
+    }
+
+    /**
+     * Retry an operation without blocking, with the attempts scheduled on the given scheduler
+     * @param operation to run
+     * @param scheduler runs the attempts - not shut down by the retryer
+     * @param <T> the type of value returned by the operation
+     * @return a future of whatever the callable returns on success, or completed with the error which
+     * escaped the retries. Cancelling it stops further attempts
+     */
+    public <T> CompletableFuture<T> retryAsync(Callable<T> operation, ScheduledExecutorService scheduler) {
+        AsyncAttempts<T> attempts = new AsyncAttempts<>(operation, scheduler);
+        attempts.schedule(Duration.ZERO);
+        return attempts.future;
     }
 
     /**
@@ -173,4 +374,181 @@ public final class Retryer {
         retries.waitBetween(sleepBetween);
         return this;
     }
+
+    /**
+     * Fluent setter of a strategy for the wait before each retry
+     * @param backoff the backoff strategy - e.g. {@link Backoff#fibonacci(Duration, Duration)}
+     * @return this
+     */
+    public Retryer backoff(Backoff backoff) {
+        retries.backoff(backoff);
+        return this;
+    }
+
+    /**
+     * Fluent setter of the time budget for all the attempts
+     * @param deadline the most time to spend retrying, from the first attempt starting
+     * @return this
+     */
+    public Retryer within(Duration deadline) {
+        retries.within(deadline);
+        return this;
+    }
+
+    /**
+     * Decide whether to retry after a failed attempt
+     * @param error the error from the attempt
+     * @param attempt the number of the attempt which failed, from 1
+     * @param delay the wait the backoff wants before the next attempt
+     * @param startTime when the first attempt started, from {@link System#nanoTime()}
+     * @return the wait before retrying, or empty if there should be no more attempts
+     */
+    private Optional<Duration> waitBeforeRetry(Throwable error, int attempt, Duration delay, long startTime) {
+        Duration remaining = remainingTime(startTime);
+        if (attempt >= retries.getMaxTimes() || remaining.isZero() || !shouldRetry(error)) {
+            return Optional.empty();
+        }
+        return Optional.of(min(delay, remaining));
+    }
+
+    /**
+     * Fluent setter of which errors to retry - others are thrown straight away. By default, any error
+     * except a {@link VirtualMachineError} or {@link LinkageError} is retried
+     * @param retryOn returns true for an error which should be retried
+     * @return this
+     */
+    public Retryer retryOn(Predicate<Throwable> retryOn) {
+        retries.retryOn(retryOn);
+        return this;
+    }
+
+    /**
+     * Fluent setter of a listener to receive an {@link Attempts} report when each retry finishes
+     * @param attemptsListener receives the reports
+     * @return this
+     */
+    public Retryer onAttempts(Consumer<Attempts> attemptsListener) {
+        retries.onAttempts(attemptsListener);
+        return this;
+    }
+
+    /**
+     * The default test of whether an error is worth retrying
+     * @param error the error
+     * @return false for a {@link VirtualMachineError} or {@link LinkageError}, otherwise true
+     */
+    static boolean isRecoverable(Throwable error) {
+        return !(error instanceof VirtualMachineError || error instanceof LinkageError);
+    }
+
+    private boolean shouldRetry(Throwable error) {
+        return error instanceof UnmatchedResult || retries.getRetryOn().test(error);
+    }
+
+    private void report(Attempts attempts, long startTime, boolean succeeded) {
+        attempts.finished(since(startTime), succeeded);
+        if (retries.getAttemptsListener() != null) {
+            retries.getAttemptsListener().accept(attempts);
+        }
+    }
+
+    private static <T> Callable<T> matching(Callable<T> operation, Predicate<? super T> until) {
+        return () -> {
+            T result = operation.call();
+            if (!until.test(result)) {
+                throw new UnmatchedResult(result);
+            }
+            return result;
+        };
+    }
+
+    private static Duration since(long startTime) {
+        return Duration.ofNanos(System.nanoTime() - startTime);
+    }
+
+    private Duration remainingTime(long startTime) {
+        if (retries.getDeadline() == null) {
+            return ChronoUnit.FOREVER.getDuration();
+        }
+        Duration remaining = retries.getDeadline().minusNanos(System.nanoTime() - startTime);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private static Duration min(Duration first, Duration second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    /**
+     * The attempts of an asynchronous retry, each scheduled after the previous one fails
+     * @param <T> the type of value returned by the operation
+     */
+    private class AsyncAttempts<T> implements Runnable {
+        private final Callable<T> operation;
+        private final ScheduledExecutorService scheduler;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long startTime = System.nanoTime();
+        private final Attempts attempts = new Attempts();
+        private int attempt;
+        private Duration delay = Duration.ZERO;
+
+        AsyncAttempts(Callable<T> operation, ScheduledExecutorService scheduler) {
+            this.operation = operation;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // cancelled
+                return;
+            }
+            attempt++;
+            long attemptStart = System.nanoTime();
+            T result;
+            try {
+                result = operation.call();
+            } catch (Throwable e) { // NOSONAR
+                attempts.attempted(since(attemptStart));
+                delay = retries.getBackoff().delay(attempt, delay);
+                Optional<Duration> wait = waitBeforeRetry(e, attempt, delay, startTime);
+                if (wait.isEmpty()) {
+                    finish(false, () -> future.completeExceptionally(e));
+                } else {
+                    attempts.waited(wait.get());
+                    schedule(wait.get());
+                }
+                return;
+            }
+
+            attempts.attempted(since(attemptStart));
+            finish(true, () -> future.complete(result));
+        }
+
+        private void finish(boolean succeeded, Runnable completion) {
+            try {
+                report(attempts, startTime, succeeded);
+            } catch (Throwable e) { // NOSONAR
+                // the caller must still hear that the retries are over
+                future.completeExceptionally(e);
+                return;
+            }
+            completion.run();
+        }
+
+        void schedule(Duration wait) {
+            try {
+                scheduler.schedule(this, wait.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * The scheduler for {@link #retryAsync(Callable)}, created when first needed
+     */
+    private static final class SharedScheduler {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+                2, new WorkerThreadFactory().named("retryer").daemon(true));
+    }
 }
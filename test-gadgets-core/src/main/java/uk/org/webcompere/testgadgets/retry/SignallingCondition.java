@@ -0,0 +1,61 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * A {@link Condition} which also signals a {@link ChangeSignal} when it is signalled, so code which
+ * notifies waiters of a change can notify a {@link Retryer} too
+ */
+class SignallingCondition implements Condition {
+    private final Condition condition;
+    private final ChangeSignal signal;
+
+    @SuppressFBWarnings("EI2")
+    SignallingCondition(Condition condition, ChangeSignal signal) {
+        this.condition = condition;
+        this.signal = signal;
+    }
+
+    // the caller waits in its own loop
+    @SuppressFBWarnings("WA_AWAIT_NOT_IN_LOOP")
+    @Override
+    public void await() throws InterruptedException {
+        condition.await();
+    }
+
+    @SuppressFBWarnings("WA_AWAIT_NOT_IN_LOOP")
+    @Override
+    public void awaitUninterruptibly() {
+        condition.awaitUninterruptibly();
+    }
+
+    @Override
+    public long awaitNanos(long nanosTimeout) throws InterruptedException {
+        return condition.awaitNanos(nanosTimeout);
+    }
+
+    @Override
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+        return condition.await(time, unit);
+    }
+
+    @Override
+    public boolean awaitUntil(Date deadline) throws InterruptedException {
+        return condition.awaitUntil(deadline);
+    }
+
+    @Override
+    public void signal() {
+        condition.signal();
+        signal.signal();
+    }
+
+    @Override
+    public void signalAll() {
+        condition.signalAll();
+        signal.signal();
+    }
+}
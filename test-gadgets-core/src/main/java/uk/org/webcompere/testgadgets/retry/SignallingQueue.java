@@ -0,0 +1,109 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link BlockingQueue} which signals a {@link ChangeSignal} whenever an element is added or removed
+ * through it. Changes made through its iterator, or straight to the queue it wraps, are not signalled
+ * @param <E> the type of element
+ */
+class SignallingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private final BlockingQueue<E> queue;
+    private final ChangeSignal signal;
+
+    @SuppressFBWarnings("EI2")
+    SignallingQueue(BlockingQueue<E> queue, ChangeSignal signal) {
+        this.queue = queue;
+        this.signal = signal;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return queue.iterator();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean offer(E element) {
+        return signalIf(queue.offer(element));
+    }
+
+    @Override
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        return signalIf(queue.offer(element, timeout, unit));
+    }
+
+    @Override
+    public void put(E element) throws InterruptedException {
+        queue.put(element);
+        signal.signal();
+    }
+
+    @Override
+    public E poll() {
+        return signalIfPresent(queue.poll());
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return signalIfPresent(queue.poll(timeout, unit));
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E element = queue.take();
+        signal.signal();
+        return element;
+    }
+
+    @Override
+    public E peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        return signalIf(queue.remove(element));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection) {
+        return signalIfDrained(queue.drainTo(collection));
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> collection, int maxElements) {
+        return signalIfDrained(queue.drainTo(collection, maxElements));
+    }
+
+    private boolean signalIf(boolean changed) {
+        if (changed) {
+            signal.signal();
+        }
+        return changed;
+    }
+
+    private E signalIfPresent(E element) {
+        signalIf(element != null);
+        return element;
+    }
+
+    private int signalIfDrained(int drained) {
+        signalIf(drained > 0);
+        return drained;
+    }
+}
@@ -2,13 +2,26 @@ package uk.org.webcompere.testgadgets.parallel;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static uk.org.webcompere.testgadgets.parallel.Concurrently.*;
 
 import com.google.common.collect.ConcurrentHashMultiset;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multiset;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -83,6 +96,443 @@ class ConcurrentlyTest {
         }
     }
 
+    @Nested
+    class BoundedParallelism {
+        private Multiset<String> set = ConcurrentHashMultiset.create();
+        private Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        @Test
+        void allDataIsProcessedOnFewerWorkers() {
+            executeOver(IntStream.range(0, 1000).boxed(), 4, value -> {
+                threads.add(Thread.currentThread());
+                set.add("item");
+            });
+
+            assertThat(set.count("item")).isEqualTo(1000);
+            assertThat(threads).hasSizeLessThanOrEqualTo(4);
+        }
+
+        @Test
+        void indexesAreProvided() {
+            executeOver(Stream.of("a", "b", "c"), 2, (value, index) -> set.add(value + index));
+
+            assertThat(set.stream()).containsExactlyInAnyOrder("a0", "b1", "c2");
+        }
+
+        @Test
+        void streamIsReadLazily() {
+            AtomicInteger generated = new AtomicInteger();
+            AtomicInteger maxAhead = new AtomicInteger();
+            AtomicInteger processed = new AtomicInteger();
+
+            executeOver(Stream.generate(generated::incrementAndGet).limit(10_000), 2, value -> {
+                maxAhead.accumulateAndGet(generated.get() - processed.get(), Math::max);
+                processed.incrementAndGet();
+            });
+
+            assertThat(processed.get()).isEqualTo(10_000);
+            assertThat(maxAhead.get()).isLessThanOrEqualTo(2);
+        }
+
+        @Test
+        void errorsDoNotStopTheOtherItems() {
+            AtomicInteger processed = new AtomicInteger();
+
+            assertThatThrownBy(() -> executeOver(IntStream.range(0, 100).boxed(), 3, value -> {
+                        processed.incrementAndGet();
+                        if (value % 10 == 0) {
+                            throw new RuntimeException("Boom " + value);
+                        }
+                    }))
+                    .isInstanceOf(AssertionError.class);
+
+            assertThat(processed.get()).isEqualTo(100);
+        }
+
+        @Test
+        void parallelismMustBePositive() {
+            assertThatThrownBy(() -> executeOver(Stream.of("a"), 0, value -> {}))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Nested
+    class Soak {
+        private Map<String, Integer> map = new ConcurrentHashMap<>();
+
+        @Test
+        void workersRunUntilTheDeadline() {
+            SoakReport report = runFor(Duration.ofMillis(200), 3, worker -> increment("key"));
+
+            assertThat(report.getWorkerCount()).isEqualTo(3);
+            assertThat(report.getElapsed()).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+            assertThat(report.getTotalIterations()).isEqualTo(map.get("key").longValue());
+            assertThat(report.getIterations(0) + report.getIterations(1) + report.getIterations(2))
+                    .isEqualTo(report.getTotalIterations());
+            assertThat(report.getThroughput()).isPositive();
+            assertThat(report.getTotalErrors()).isZero();
+        }
+
+        @Test
+        void workersReceiveTheirIndex() {
+            runFor(Duration.ofMillis(50), 2, worker -> increment("worker" + worker));
+
+            assertThat(map).containsOnlyKeys("worker0", "worker1");
+        }
+
+        @Test
+        void errorsAreCountedByType() {
+            AtomicInteger counter = new AtomicInteger();
+
+            SoakReport report = runFor(Duration.ofMillis(100), 2, worker -> {
+                int value = counter.incrementAndGet();
+                if (value % 2 == 0) {
+                    throw new IllegalStateException("even " + value);
+                } else if (value % 3 == 0) {
+                    throw new IOException("divisible by three " + value);
+                }
+            });
+
+            assertThat(report.getErrorCounts()).containsOnlyKeys(IllegalStateException.class, IOException.class);
+            assertThat(report.getTotalErrors()).isCloseTo(report.getTotalIterations() * 2 / 3, within(2L));
+            assertThat(report.getFirstError(IOException.class)).isPresent();
+            assertThat(report.getFirstError(RuntimeException.class)).isEmpty();
+        }
+
+        @Test
+        void assertionErrorsAreCountedWithoutStoppingTheWorkers() {
+            SoakReport report = runFor(Duration.ofMillis(50), 2, worker -> {
+                throw new AssertionError("worker " + worker);
+            });
+
+            assertThat(report.getTotalIterations()).isGreaterThan(2);
+            assertThat(report.getTotalErrors()).isEqualTo(report.getTotalIterations());
+            assertThat(report.getFirstError(AssertionError.class)).isPresent();
+        }
+
+        @Test
+        void workersMustBePositive() {
+            assertThatThrownBy(() -> runFor(Duration.ofMillis(10), 0, worker -> {}))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        private void increment(String value) {
+            map.merge(value, 1, Integer::sum);
+        }
+    }
+
+    @Nested
+    class CollectingResults {
+        @Test
+        void resultsAreInTheOrderOfTheData() {
+            assertThat(mapTogether(Stream.of("a", "bb", "ccc"), String::length)).containsExactly(1, 2, 3);
+        }
+
+        @Test
+        void canCollectResultsFromManyCalls() {
+            AtomicInteger counter = new AtomicInteger();
+
+            List<Integer> results = mapTogether(IntStream.range(0, 1000).boxed(), i -> counter.incrementAndGet());
+
+            assertThat(results).hasSize(1000).doesNotHaveDuplicates().doesNotContainNull();
+        }
+
+        @Test
+        void emptyStreamGivesNoResults() {
+            assertThat(mapTogether(Stream.empty(), Object::toString)).isEmpty();
+        }
+
+        @Test
+        void whenFunctionFailsThenAssertionError() {
+            assertThatThrownBy(() -> mapTogether(Stream.of(1, 2), i -> {
+                        throw new IOException("Boom");
+                    }))
+                    .isInstanceOf(AssertionError.class);
+        }
+    }
+
+    @Nested
+    class InSteps {
+        @Test
+        void allWorkersFinishEachStepBeforeTheNext() {
+            AtomicInteger reads = new AtomicInteger();
+            AtomicInteger readsSeenByWriters = new AtomicInteger(Integer.MAX_VALUE);
+
+            executeInSteps(
+                    50,
+                    worker -> reads.incrementAndGet(),
+                    worker -> readsSeenByWriters.accumulateAndGet(reads.get(), Math::min));
+
+            assertThat(readsSeenByWriters.get()).isEqualTo(50);
+        }
+
+        @Test
+        void cannotHaveMoreWorkersThanTheBarrierAllows() {
+            assertThatThrownBy(() -> executeInSteps(ConcurrentRunner.MAX_STEP_WORKERS + 1, worker -> {}))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+
+        @Test
+        void whenPoolIsTooSmallForTheWorkersThenFailsFast() {
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            try {
+                assertThatThrownBy(() -> using(ExecutorFactory.of(pool)).executeInSteps(3, worker -> {}, worker -> {}))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("too small");
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Test
+        void whenAWorkerIsRejectedThenTheOthersStillFinishTheirSteps() {
+            AtomicInteger submitted = new AtomicInteger();
+            AtomicInteger secondSteps = new AtomicInteger();
+            ExecutorFactory rejectsTheLast = workers -> command -> {
+                if (submitted.incrementAndGet() == workers) {
+                    throw new RejectedExecutionException("Full");
+                }
+                new Thread(command).start();
+            };
+
+            assertThatThrownBy(() -> using(rejectsTheLast)
+                            .collectAll()
+                            .timeout(Duration.ofSeconds(30))
+                            .executeInSteps(3, worker -> {}, worker -> secondSteps.incrementAndGet()))
+                    .isInstanceOf(AssertionError.class)
+                    .hasMessageNotContaining("Timed out")
+                    .satisfies(error -> assertThat(error.getSuppressed())
+                            .singleElement()
+                            .satisfies(failure ->
+                                    assertThat(failure.getCause()).isInstanceOf(RejectedExecutionException.class)));
+
+            assertThat(secondSteps.get()).isEqualTo(2);
+        }
+
+        @Test
+        void canReproduceALostUpdate() {
+            int[] counter = new int[1];
+            int[] readValues = new int[10];
+
+            executeInSteps(10, worker -> readValues[worker] = counter[0], worker -> {
+                synchronized (counter) {
+                    counter[0] = readValues[worker] + 1;
+                }
+            });
+
+            assertThat(counter[0]).isOne();
+        }
+
+        @Test
+        void whenWorkerFailsThenOthersCarryOn() {
+            AtomicInteger secondSteps = new AtomicInteger();
+
+            assertThatThrownBy(() -> executeInSteps(
+                            5,
+                            worker -> {
+                                if (worker == 0) {
+                                    throw new IOException("Boom");
+                                }
+                            },
+                            worker -> secondSteps.incrementAndGet()))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed()).hasSize(1));
+
+            assertThat(secondSteps.get()).isEqualTo(4);
+        }
+
+        @Test
+        void whenFailingFastThenWorkersWaitingForTheNextStepAreReleased() {
+            AtomicInteger secondSteps = new AtomicInteger();
+            CountDownLatch othersFinishedFirstStep = new CountDownLatch(4);
+
+            assertThatThrownBy(() -> runner().failFast()
+                            .executeInSteps(
+                                    5,
+                                    worker -> {
+                                        if (worker == 0) {
+                                            othersFinishedFirstStep.await();
+                                            throw new IOException("Boom");
+                                        }
+                                        othersFinishedFirstStep.countDown();
+                                    },
+                                    worker -> secondSteps.incrementAndGet()))
+                    .isInstanceOf(AssertionError.class);
+
+            assertThat(secondSteps.get()).isZero();
+        }
+
+        @Test
+        void noStepsIsNoOperation() {
+            executeInSteps(3);
+        }
+    }
+
+    @Nested
+    class Exploring {
+        @Test
+        void eachIterationHasFreshStateAndAnOutcome() {
+            OutcomeReport<Integer> report = explore(AtomicInteger::new)
+                    .actor(AtomicInteger::incrementAndGet)
+                    .actor(AtomicInteger::incrementAndGet)
+                    .run(10_000, AtomicInteger::get);
+
+            assertThat(report.getIterations()).isEqualTo(10_000);
+            assertThat(report.getOutcomes()).containsOnlyKeys(2);
+            assertThat(report.getFrequency(2)).isEqualTo(1.0d);
+        }
+
+        @Test
+        void outcomesAreTheInterleavingsOfTheActors() {
+            OutcomeReport<String> report = explore(StringBuffer::new)
+                    .actor(buffer -> buffer.append("A"))
+                    .actor(buffer -> buffer.append("B"))
+                    .jitter(Duration.ofNanos(1000))
+                    .yields(true)
+                    .run(1000, StringBuffer::toString);
+
+            assertThat(report.getOutcomes().keySet()).isSubsetOf("AB", "BA");
+            assertThat(report.getCount("AB") + report.getCount("BA")).isEqualTo(1000);
+            assertThat(report.getCount("C")).isZero();
+            assertThat(report.toString()).startsWith("Outcomes of 1000 iterations:");
+        }
+
+        @Test
+        void whenActorFailsThenAssertionError() {
+            assertThatThrownBy(() -> explore(AtomicInteger::new)
+                            .actor(counter -> {
+                                if (counter.incrementAndGet() > 0) {
+                                    throw new IOException("Boom");
+                                }
+                            })
+                            .actor(AtomicInteger::incrementAndGet)
+                            .run(100, AtomicInteger::get))
+                    .isInstanceOf(AssertionError.class);
+        }
+
+        @Test
+        void whenActorFailsAnAssertionThenTheOtherActorsAreReleased() {
+            assertThatThrownBy(() -> runner().timeout(Duration.ofSeconds(30))
+                            .explore(AtomicInteger::new)
+                            .actor(AtomicInteger::incrementAndGet)
+                            .actor(counter -> {
+                                throw new AssertionError("Invariant broken");
+                            })
+                            .run(10, AtomicInteger::get))
+                    .isInstanceOf(AssertionError.class)
+                    .hasMessageNotContaining("Timed out")
+                    .satisfies(error -> assertThat(error.getSuppressed()).hasSize(1));
+        }
+
+        @Test
+        void whenPoolIsTooSmallForTheActorsThenFailsFast() {
+            ExecutorService pool = Executors.newFixedThreadPool(1);
+            try {
+                assertThatThrownBy(() -> using(ExecutorFactory.of(pool))
+                                .explore(AtomicInteger::new)
+                                .actor(AtomicInteger::incrementAndGet)
+                                .actor(AtomicInteger::incrementAndGet)
+                                .run(10, AtomicInteger::get))
+                        .isInstanceOf(IllegalArgumentException.class)
+                        .hasMessageContaining("too small");
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Test
+        void whenOutcomeCannotBeObservedThenAssertionError() {
+            assertThatThrownBy(() -> explore(AtomicInteger::new)
+                            .actor(AtomicInteger::incrementAndGet)
+                            .run(100, counter -> {
+                                throw new IllegalStateException("Boom");
+                            }))
+                    .isInstanceOf(AssertionError.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+
+        @Test
+        void cannotExploreWithoutActors() {
+            assertThatThrownBy(() -> explore(AtomicInteger::new).run(10, AtomicInteger::get))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Nested
+    class WorkerThreads {
+        private Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+
+        @Test
+        void threadsCanBeNamedAfterTheirWorker() {
+            Map<Integer, String> names = new ConcurrentHashMap<>();
+
+            runner().workerNames("reader")
+                    .executeMultiple(3, index -> names.put(index, Thread.currentThread().getName()));
+
+            assertThat(names)
+                    .containsExactlyInAnyOrderEntriesOf(ImmutableMap.of(0, "reader-0", 1, "reader-1", 2, "reader-2"));
+        }
+
+        @Test
+        void threadNamesAreRestoredAfterRunningOnAPool() throws Exception {
+            ExecutorService pool = Executors.newSingleThreadExecutor(new WorkerThreadFactory().named("pool"));
+            try {
+                using(ExecutorFactory.of(pool)).workerNames("reader").executeMultiple(2, index -> {});
+
+                assertThat(pool.submit(() -> Thread.currentThread().getName()).get())
+                        .isEqualTo("pool-0");
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Test
+        void workerIndexIsAvailableOnTheWorkerThread() {
+            Map<Integer, Integer> workers = new ConcurrentHashMap<>();
+
+            executeMultiple(5, index -> workers.put(index, currentWorker().orElse(-1)));
+
+            assertThat(workers).containsExactlyInAnyOrderEntriesOf(ImmutableMap.of(0, 0, 1, 1, 2, 2, 3, 3, 4, 4));
+        }
+
+        @Test
+        void workerIndexIsNotAvailableOutsideWorkers() {
+            executeMultiple(2, () -> {});
+
+            assertThat(currentWorker()).isEmpty();
+        }
+
+        @Test
+        void threadsCanBeConfigured() {
+            ThreadGroup group = new ThreadGroup("test-workers");
+            WorkerThreadFactory threadFactory = new WorkerThreadFactory()
+                    .named("test")
+                    .daemon(true)
+                    .priority(Thread.MAX_PRIORITY)
+                    .group(group);
+
+            Set<ThreadGroup> groups = ConcurrentHashMap.newKeySet();
+
+            using(ExecutorFactory.threadPerTask(threadFactory)).executeMultiple(2, index -> {
+                threads.put(index, Thread.currentThread());
+                groups.add(Thread.currentThread().getThreadGroup());
+            });
+
+            assertThat(threads.values()).allSatisfy(thread -> {
+                assertThat(thread.getName()).startsWith("test-");
+                assertThat(thread.isDaemon()).isTrue();
+                assertThat(thread.getPriority()).isEqualTo(Thread.MAX_PRIORITY);
+            });
+            assertThat(groups).containsExactly(group);
+        }
+
+        @Test
+        void cannotSetInvalidPriority() {
+            assertThatThrownBy(() -> new WorkerThreadFactory().priority(100))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
     @Nested
     class ErrorHandling {
         @Test
@@ -94,5 +544,206 @@ class ConcurrentlyTest {
                     })
                     .isInstanceOf(AssertionError.class);
         }
+
+        @Test
+        void whenCollectingAllThenEachErrorIsSuppressedWithItsIndex() {
+            assertThatThrownBy(() -> executeMultiple(3, index -> {
+                        if (index != 1) {
+                            throw new IOException("Boom " + index);
+                        }
+                    }))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed())
+                            .hasSize(2)
+                            .allMatch(failure -> failure instanceof WorkerFailure)
+                            .extracting(failure -> ((WorkerFailure) failure).getIndex())
+                            .containsExactlyInAnyOrder(0, 2));
+        }
+
+        @Test
+        void whenCollectingAllThenAssertionErrorsAreCollected() {
+            assertThatThrownBy(() -> runner().collectAll().executeMultiple(3, index -> {
+                        if (index == 1) {
+                            throw new AssertionError("Boom");
+                        }
+                    }))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed())
+                            .singleElement()
+                            .satisfies(failure -> assertThat(failure.getCause()).isInstanceOf(AssertionError.class))
+                            .extracting(failure -> ((WorkerFailure) failure).getIndex())
+                            .isEqualTo(1));
+        }
+
+        @Test
+        void whenFailingFastThenAnAssertionErrorStopsTheOtherWorkers() {
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> runner().failFast().executeMultiple(3, index -> {
+                        if (index == 0) {
+                            throw new AssertionError("Boom");
+                        }
+                        Thread.sleep(60_000);
+                    }))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed()).hasSize(1));
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(30));
+        }
+
+        @Test
+        void suppressedErrorHasTheOriginalCause() {
+            IOException boom = new IOException("Boom");
+
+            assertThatThrownBy(() -> executeTogether(() -> {
+                        throw boom;
+                    }))
+                    .satisfies(error -> assertThat(error.getSuppressed()[0].getCause())
+                            .isSameAs(boom));
+        }
+
+        @Test
+        void whenFailingFastThenOtherWorkersAreInterrupted() {
+            AtomicInteger interrupted = new AtomicInteger();
+            long start = System.nanoTime();
+
+            assertThatThrownBy(() -> runner().failFast().executeMultiple(3, index -> {
+                        if (index == 0) {
+                            throw new IOException("Boom");
+                        }
+                        try {
+                            Thread.sleep(60_000);
+                        } catch (InterruptedException e) {
+                            interrupted.incrementAndGet();
+                            throw e;
+                        }
+                    }))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed())
+                            .singleElement()
+                            .extracting(failure -> ((WorkerFailure) failure).getIndex())
+                            .isEqualTo(0));
+
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(30));
+        }
+
+        @Test
+        void whenFailingFastThenNoMoreItemsAreTaken() {
+            AtomicInteger calls = new AtomicInteger();
+
+            assertThatThrownBy(() -> runner().failFast().executeOver(IntStream.range(0, 1000).boxed(), 1, item -> {
+                        calls.incrementAndGet();
+                        throw new IOException("Boom");
+                    }))
+                    .isInstanceOf(AssertionError.class);
+
+            assertThat(calls.get()).isOne();
+        }
+
+        @Test
+        void whenCollectingAllThenAllItemsAreTaken() {
+            AtomicInteger calls = new AtomicInteger();
+
+            assertThatThrownBy(() -> runner().failFast().collectAll().executeOver(
+                            IntStream.range(0, 10).boxed(), 2, item -> {
+                                calls.incrementAndGet();
+                                throw new IOException("Boom");
+                            }))
+                    .isInstanceOf(AssertionError.class)
+                    .satisfies(error -> assertThat(error.getSuppressed()).hasSize(10));
+
+            assertThat(calls.get()).isEqualTo(10);
+        }
+
+        @Test
+        void whenRunTimesOutThenAssertionError() {
+            CountDownLatch neverReleased = new CountDownLatch(1);
+
+            assertThatThrownBy(() -> runner().timeout(Duration.ofMillis(100)).executeMultiple(2, neverReleased::await))
+                    .isInstanceOf(AssertionError.class)
+                    .hasMessageContaining("Timed out")
+                    .hasMessageContaining("2 worker(s) still running");
+        }
+
+        @Test
+        void whenRunFinishesWithinTimeoutThenNoError() {
+            AtomicInteger calls = new AtomicInteger();
+
+            runner().timeout(Duration.ofSeconds(30)).executeMultiple(10, calls::incrementAndGet);
+
+            assertThat(calls.get()).isEqualTo(10);
+        }
+    }
+
+    @Nested
+    class UsingExecutors {
+        private Map<String, Integer> map = new ConcurrentHashMap<>();
+
+        @Test
+        void canRunOnAPool() {
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                using(ExecutorFactory.of(pool)).executeMultiple(100, () -> increment("key"));
+            } finally {
+                pool.shutdown();
+            }
+
+            assertThat(map.get("key")).isEqualTo(100);
+        }
+
+        @Test
+        void canRunOnAFactoryLambda() {
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                using(workers -> pool).executeMultiple(10, () -> increment("key"));
+            } finally {
+                pool.shutdown();
+            }
+
+            assertThat(map.get("key")).isEqualTo(10);
+        }
+
+        @Test
+        void canRunOnAFactory() {
+            using(ExecutorFactory.threadPerTask()).executeOver(Stream.of("a", "b", "a"), this::increment);
+
+            assertThat(map).containsExactlyInAnyOrderEntriesOf(ImmutableMap.of("a", 2, "b", 1));
+        }
+
+        @Test
+        void canRunManyWorkersOnTheBestThreadsAvailable() {
+            using(ExecutorFactory.virtualThreadsIfAvailable()).executeMultiple(1000, () -> increment("key"));
+
+            assertThat(map.get("key")).isEqualTo(1000);
+        }
+
+        @Test
+        void whenVirtualThreadsAvailableThenCanUseThem() {
+            assumeTrue(ExecutorFactory.isVirtualThreadsAvailable());
+
+            using(ExecutorFactory.virtualThreads()).executeMultiple(10_000, () -> increment("key"));
+
+            assertThat(map.get("key")).isEqualTo(10_000);
+        }
+
+        @Test
+        void whenVirtualThreadsNotAvailableThenCannotUseThem() {
+            assumeFalse(ExecutorFactory.isVirtualThreadsAvailable());
+
+            assertThatThrownBy(ExecutorFactory::virtualThreads).isInstanceOf(UnsupportedOperationException.class);
+        }
+
+        @Test
+        void whenExecutorRejectsWorkThenAssertionError() {
+            ExecutorService pool = Executors.newSingleThreadExecutor();
+            pool.shutdown();
+
+            assertThatThrownBy(() -> using(ExecutorFactory.of(pool)).executeMultiple(2, () -> increment("key")))
+                    .isInstanceOf(AssertionError.class);
+        }
+
+        private void increment(String value) {
+            map.merge(value, 1, Integer::sum);
+        }
     }
 }
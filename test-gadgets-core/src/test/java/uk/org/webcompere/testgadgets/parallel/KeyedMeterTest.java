@@ -0,0 +1,182 @@
+package uk.org.webcompere.testgadgets.parallel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static uk.org.webcompere.testgadgets.parallel.Concurrently.executeMultiple;
+import static uk.org.webcompere.testgadgets.parallel.Concurrently.executeTogether;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventRetention;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventStatistics;
+import uk.org.webcompere.testgadgets.parallel.statistics.FakeTimeSource;
+
+class KeyedMeterTest {
+    private FakeTimeSource clock = new FakeTimeSource();
+    private KeyedMeter<String> meter = new KeyedMeter<>(clock);
+
+    @Test
+    void whenNothingHappensThenNoKeys() {
+        assertThat(meter.getKeys()).isEmpty();
+    }
+
+    @Test
+    void eventsAreTrackedByKey() {
+        meter.startEvent("a").end();
+        meter.startEvent("b").end();
+        meter.startEvent("a").end();
+
+        assertThat(meter.getKeys()).containsExactlyInAnyOrder("a", "b");
+        assertThat(meter.getKeyCount()).isEqualTo(2);
+        assertThat(meter.calculateStatistics().getTotalEvents()).isEqualTo(3);
+    }
+
+    @Test
+    void eventsForTheSameKeyCanOverlap() {
+        KeyedMeter.Event first = meter.startEvent("partition-1");
+        clock.advance(10);
+        KeyedMeter.Event second = meter.startEvent("partition-1");
+        clock.advance(10);
+        first.end();
+        clock.advance(30);
+        second.end();
+
+        EventStatistics<String> statistics = meter.calculateStatistics();
+        assertThat(statistics.getMaxConcurrency()).isEqualTo(2);
+        assertThat(statistics.getElapsedTime()).isEqualTo(50);
+        assertThat(statistics.getMaxLatency("partition-1")).isBetween(40L, 41L);
+    }
+
+    @Test
+    void cannotEndAnEventTwice() {
+        KeyedMeter.Event event = meter.startEvent("a");
+        event.end();
+
+        assertThatThrownBy(event::end).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void canEndTheLatestEventByKey() {
+        meter.startEvent("a");
+        clock.advance(20);
+        meter.endEvent("a");
+
+        assertThat(meter.calculateStatistics().getMaxLatency("a")).isBetween(20L, 21L);
+    }
+
+    @Test
+    void cannotEndByKeyWithNoStart() {
+        assertThatThrownBy(() -> meter.endEvent("a")).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(meter.getKeys()).isEmpty();
+    }
+
+    @Test
+    void endedEventsAreNotHeldForEndingByKey() {
+        for (int i = 0; i < 1000; i++) {
+            meter.startEvent("request-" + i).end();
+        }
+        meter.startEvent("a");
+        meter.endEvent("a");
+
+        assertThat(meter.getRunningKeyCount()).isZero();
+        assertThat(meter.getKeyCount()).isEqualTo(1001);
+    }
+
+    @Test
+    void endingAnEarlierEventLeavesTheLatestToEndByKey() {
+        KeyedMeter.Event first = meter.startEvent("a");
+        meter.startEvent("a");
+        first.end();
+
+        assertThat(meter.getRunningKeyCount()).isEqualTo(1);
+
+        meter.endEvent("a");
+
+        assertThat(meter.getRunningKeyCount()).isZero();
+        assertThat(meter.calculateStatistics().getTotalEvents()).isEqualTo(2);
+    }
+
+    @Test
+    void cannotEndByKeyOnceTheLatestEventHasEnded() {
+        meter.startEvent("a").end();
+
+        assertThatThrownBy(() -> meter.endEvent("a")).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void endingByKeyWhileTheEventEndsElsewhereIsOnlyEverOutOfBounds() {
+        for (int i = 0; i < 200; i++) {
+            KeyedMeter.Event event = meter.startEvent("a");
+            executeTogether(
+                    () -> {
+                        try {
+                            event.end();
+                        } catch (IllegalStateException alreadyEndedByKey) {
+                            // the other worker won
+                        }
+                    },
+                    () -> {
+                        try {
+                            meter.endEvent("a");
+                        } catch (IndexOutOfBoundsException alreadyEnded) {
+                            // the other worker won
+                        }
+                    });
+        }
+
+        assertThat(meter.calculateStatistics().getTotalEvents()).isEqualTo(200);
+    }
+
+    @Test
+    void cannotChangeRetentionOnceEventsAreRecorded() {
+        meter.startEvent("a");
+
+        assertThatThrownBy(() -> meter.withRetention(EventRetention.sample(10)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void wrappedEventIsRecorded() {
+        String result = meter.wrapEvent("a", () -> {
+            clock.advance(5);
+            return "done";
+        });
+
+        assertThat(result).isEqualTo("done");
+        assertThat(meter.calculateStatistics().getTotalEvents()).isOne();
+    }
+
+    @Test
+    void eventsCanEndOnADifferentThread() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            KeyedMeter<Integer> requests = new KeyedMeter<>();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[100];
+            for (int i = 0; i < futures.length; i++) {
+                KeyedMeter.Event event = requests.startEvent(i % 10);
+                futures[i] = CompletableFuture.runAsync(event::end, pool);
+            }
+            CompletableFuture.allOf(futures).get();
+
+            assertThat(requests.getKeyCount()).isEqualTo(10);
+            assertThat(requests.calculateStatistics().getTotalEvents()).isEqualTo(100);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void manyThreadsCanRecordForTheSameKey() {
+        KeyedMeter<String> shared = new KeyedMeter<>();
+
+        executeMultiple(8, () -> {
+            for (int i = 0; i < 1000; i++) {
+                shared.startEvent("key").end();
+            }
+        });
+
+        assertThat(shared.calculateStatistics().getTotalEvents()).isEqualTo(8000);
+    }
+}
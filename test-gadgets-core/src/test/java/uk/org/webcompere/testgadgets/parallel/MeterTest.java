@@ -1,11 +1,23 @@
 package uk.org.webcompere.testgadgets.parallel;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.data.Percentage.withPercentage;
 import static uk.org.webcompere.testgadgets.parallel.Concurrently.executeMultiple;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import org.junit.jupiter.api.Test;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventRetention;
+import uk.org.webcompere.testgadgets.parallel.statistics.EventStatistics;
+import uk.org.webcompere.testgadgets.parallel.statistics.FakeTimeSource;
+import uk.org.webcompere.testgadgets.parallel.statistics.MeterSnapshot;
 
 class MeterTest {
     private Meter meter = new Meter();
@@ -22,6 +34,32 @@ class MeterTest {
         assertThat(meter.getThreadCount()).isOne();
     }
 
+    @Test
+    void cannotEndAnEventWhichHasNotStarted() {
+        assertThatThrownBy(() -> meter.endEvent()).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void cannotEndAnEventTwice() {
+        meter.startEvent();
+        meter.endEvent();
+
+        assertThatThrownBy(() -> meter.endEvent()).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void manyEventsOnManyThreadsAreAllRecorded() {
+        executeMultiple(8, () -> {
+            for (int i = 0; i < 10_000; i++) {
+                meter.startEvent();
+                meter.endEvent();
+            }
+        });
+
+        assertThat(meter.getThreadCount()).isEqualTo(8);
+        assertThat(meter.calculateStatistics().getTotalEvents()).isEqualTo(80_000);
+    }
+
     @Test
     void wrapSupplier() {
         // let's say this is the supplier from our real code under test
@@ -112,6 +150,254 @@ class MeterTest {
         assertThat(meter.calculateStatistics().getUtilization()).isCloseTo(10.0 / 50.0, withPercentage(20));
     }
 
+    @Test
+    void subMillisecondEventsAreTimedWithAFakeClock() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter fakeTimedMeter = new Meter(clock);
+
+        fakeTimedMeter.start();
+        fakeTimedMeter.wrapEvent(() -> clock.advance(Duration.ofNanos(250_000)));
+        clock.advance(Duration.ofNanos(750_000));
+        fakeTimedMeter.stop();
+
+        EventStatistics<Thread> statistics = fakeTimedMeter.calculateStatistics();
+        assertThat(statistics.getElapsed()).isEqualTo(Duration.ofMillis(1));
+        assertThat(statistics.getUtilization()).isEqualTo(0.25d);
+    }
+
+    @Test
+    void cannotChangeRetentionOnceEventsAreRecorded() {
+        meter.wrapEvent(() -> {});
+
+        assertThatThrownBy(() -> meter.withRetention(EventRetention.latest(10)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void cannotChangeRetentionOnceAsyncOperationsAreRecorded() {
+        meter.wrapAsync(() -> CompletableFuture.completedFuture("done"));
+
+        assertThatThrownBy(() -> meter.withRetention(EventRetention.latest(10)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void whenRetentionIsBoundedThenTotalsAreStillExact() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter boundedMeter = new Meter(clock).withRetention(EventRetention.latest(10));
+
+        boundedMeter.start();
+        for (int i = 0; i < 1000; i++) {
+            boundedMeter.wrapEvent(() -> clock.advance(Duration.ofNanos(30)));
+            clock.advance(Duration.ofNanos(70));
+        }
+        boundedMeter.stop();
+
+        EventStatistics<Thread> statistics = boundedMeter.calculateStatistics();
+        assertThat(statistics.getTotalEvents()).isEqualTo(1000);
+        assertThat(statistics.getLatencyHistogram().getCount()).isEqualTo(1000);
+        assertThat(statistics.getUtilization()).isEqualTo(0.3d);
+    }
+
+    @Test
+    void waitsWithinEventsAreReportedSeparatelyFromWork() throws Exception {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter waitingMeter = new Meter(clock);
+
+        waitingMeter.wrapEvent(() -> {
+            clock.advance(Duration.ofNanos(100));
+            waitingMeter.wrapWait(() -> clock.advance(Duration.ofNanos(300)));
+            clock.advance(Duration.ofNanos(100));
+        });
+
+        EventStatistics<Thread> statistics = waitingMeter.calculateStatistics();
+        assertThat(statistics.getWaitTime(Thread.currentThread())).isEqualTo(300L);
+        assertThat(statistics.getWaitFraction(Thread.currentThread())).isEqualTo(0.6d);
+        assertThat(statistics.getWaitFraction()).isEqualTo(0.6d);
+    }
+
+    @Test
+    void whenEventEndsWhileWaitingThenWaitEndsWithIt() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter waitingMeter = new Meter(clock);
+
+        waitingMeter.startEvent();
+        clock.advance(Duration.ofNanos(50));
+        waitingMeter.beginWait();
+        clock.advance(Duration.ofNanos(50));
+        waitingMeter.endEvent();
+
+        assertThat(waitingMeter.calculateStatistics().getWaitFraction()).isEqualTo(0.5d);
+    }
+
+    @Test
+    void cannotWaitOutsideAnEvent() {
+        assertThatThrownBy(meter::beginWait).isInstanceOf(IllegalStateException.class);
+
+        meter.wrapEvent(() -> {});
+        assertThatThrownBy(meter::beginWait).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void cannotEndAWaitWhichHasNotBegun() {
+        meter.startEvent();
+        assertThatThrownBy(meter::endWait).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void latencyPercentilesCanBeAsserted() {
+        executeMultiple(4, () -> meter.wrapEvent(() -> Thread.sleep(10)));
+
+        EventStatistics<Thread> statistics = meter.calculateStatistics();
+        assertThat(statistics.toDuration(statistics.getLatencyPercentile(0.99)))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(10))
+                .isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void asyncOperationsAreTimedFromCreationToCompletion() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter fakeTimedMeter = new Meter(clock);
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> wrapped = fakeTimedMeter.wrapAsync(() -> pending);
+        clock.advance(100);
+        pending.complete("done");
+
+        assertThat(wrapped.join()).isEqualTo("done");
+        EventStatistics<AsyncOutcome> statistics = fakeTimedMeter.calculateAsyncStatistics();
+        assertThat(statistics.getTotalEvents()).isOne();
+        assertThat(statistics.getMaxLatency(AsyncOutcome.SUCCEEDED)).isBetween(100L, 101L);
+    }
+
+    @Test
+    void asyncSuccessesAndFailuresAreRecordedSeparately() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter fakeTimedMeter = new Meter(clock);
+
+        CompletableFuture<String> succeeding = new CompletableFuture<>();
+        CompletableFuture<String> failing = new CompletableFuture<>();
+        fakeTimedMeter.wrapAsync(() -> succeeding);
+        fakeTimedMeter.wrapAsync(() -> failing);
+        clock.advance(10);
+        succeeding.complete("done");
+        clock.advance(40);
+        failing.completeExceptionally(new IOException("Boom"));
+
+        EventStatistics<AsyncOutcome> statistics = fakeTimedMeter.calculateAsyncStatistics();
+        assertThat(statistics.getMaxConcurrency()).isEqualTo(2);
+        assertThat(statistics.getMaxLatency(AsyncOutcome.SUCCEEDED)).isBetween(10L, 11L);
+        assertThat(statistics.getMaxLatency(AsyncOutcome.FAILED)).isBetween(50L, 51L);
+        assertThat(fakeTimedMeter.getThreadCount()).isZero();
+    }
+
+    @Test
+    void whenAsyncOperationCannotStartThenFailureRecorded() {
+        assertThatThrownBy(() -> meter.wrapAsync(() -> {
+                    throw new IllegalStateException("Boom");
+                }))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(meter.calculateAsyncStatistics().getLatencyHistogram(AsyncOutcome.FAILED).getCount())
+                .isOne();
+    }
+
+    @Test
+    void whenAsyncOperationThrowsAnErrorThenFailureRecorded() {
+        assertThatThrownBy(() -> meter.wrapAsync(() -> {
+                    throw new AssertionError("Boom");
+                }))
+                .isInstanceOf(AssertionError.class);
+
+        assertThat(meter.calculateAsyncStatistics().getLatencyHistogram(AsyncOutcome.FAILED).getCount())
+                .isOne();
+    }
+
+    @Test
+    void whenAsyncOperationProvidesNoFutureThenFailureRecorded() {
+        assertThatThrownBy(() -> meter.wrapAsync(() -> null))
+                .isInstanceOf(NullPointerException.class)
+                .hasMessageContaining("no future");
+
+        assertThat(meter.calculateAsyncStatistics().getLatencyHistogram(AsyncOutcome.FAILED).getCount())
+                .isOne();
+    }
+
+    @Test
+    void manyConcurrentAsyncOperationsAreRecorded() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[200];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = meter.wrapAsync(() -> CompletableFuture.supplyAsync(() -> "value", pool));
+            }
+            CompletableFuture.allOf(futures).get();
+
+            assertThat(meter.calculateAsyncStatistics().getTotalEvents()).isEqualTo(200);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void whenLiveCountersNotEnabledThenCannotSnapshot() {
+        assertThatThrownBy(() -> meter.snapshot()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void snapshotShowsEventsInFlight() {
+        FakeTimeSource clock = new FakeTimeSource();
+        Meter liveMeter = new Meter(clock).withLiveCounters();
+
+        liveMeter.startEvent();
+        clock.advance(20);
+        MeterSnapshot during = liveMeter.snapshot();
+        liveMeter.endEvent();
+        MeterSnapshot after = liveMeter.snapshot();
+
+        assertThat(during.getInFlight()).isOne();
+        assertThat(after.getInFlight()).isZero();
+        assertThat(after.getCompletedEvents()).isOne();
+        assertThat(after.getIntervalLatencies().getMax()).isEqualTo(20);
+    }
+
+    @Test
+    void snapshotCanBePolledWhileEventsHappen() {
+        Meter liveMeter = new Meter().withLiveCounters();
+        CountDownLatch allStarted = new CountDownLatch(4);
+        CountDownLatch release = new CountDownLatch(1);
+        int[] peakSeen = new int[1];
+
+        executeMultiple(5, index -> {
+            if (index < 4) {
+                liveMeter.wrapEvent(() -> {
+                    allStarted.countDown();
+                    release.await();
+                });
+            } else {
+                allStarted.await();
+                peakSeen[0] = liveMeter.snapshot().getInFlight();
+                release.countDown();
+            }
+        });
+
+        assertThat(peakSeen[0]).isEqualTo(4);
+        MeterSnapshot snapshot = liveMeter.snapshot();
+        assertThat(snapshot.getPeakConcurrency()).isEqualTo(4);
+        assertThat(snapshot.getCompletedEvents()).isEqualTo(4);
+    }
+
+    @Test
+    void traceHasTheThreadNames() throws Exception {
+        Concurrently.using(ExecutorFactory.threadPerTask(new WorkerThreadFactory().named("traced")))
+                .executeMultiple(2, () -> meter.wrapEvent(() -> {}));
+
+        StringWriter writer = new StringWriter();
+        meter.writeChromeTrace(writer);
+
+        assertThat(writer.toString()).contains("\"traced-0\"", "\"traced-1\"");
+    }
+
     // example strong exception
     private static class SomeException extends Exception {}
 
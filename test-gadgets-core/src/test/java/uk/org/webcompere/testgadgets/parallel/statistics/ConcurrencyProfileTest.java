@@ -0,0 +1,67 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyProfileTest {
+
+    @Test
+    void whenNoEventsThenNoConcurrency() {
+        ConcurrencyProfile profile = ConcurrencyProfile.of(new long[0], new long[0], 0, 100);
+
+        assertThat(profile.getPeakConcurrency()).isZero();
+        assertThat(profile.getTimeAtConcurrency(0)).isEqualTo(100);
+        assertThat(profile.getMeanConcurrency()).isZero();
+    }
+
+    @Test
+    void timeAtEachLevelIsMeasured() {
+        // 0-10 idle, 10-20 one event, 20-30 two events, 30-40 three, 40-50 one, 50-60 idle
+        ConcurrencyProfile profile =
+                ConcurrencyProfile.of(new long[] {10, 20, 30}, new long[] {40, 40, 50}, 0, 60);
+
+        assertThat(profile.getPeakConcurrency()).isEqualTo(3);
+        assertThat(profile.getPeakTime()).isEqualTo(30);
+        assertThat(profile.getTimeAtConcurrency(0)).isEqualTo(20);
+        assertThat(profile.getTimeAtConcurrency(1)).isEqualTo(20);
+        assertThat(profile.getTimeAtConcurrency(2)).isEqualTo(10);
+        assertThat(profile.getTimeAtConcurrency(3)).isEqualTo(10);
+        assertThat(profile.getTimeAtConcurrency(4)).isZero();
+        assertThat(profile.getTimeAtOrAboveConcurrency(2)).isEqualTo(20);
+        assertThat(profile.getMeanConcurrency()).isEqualTo(70.0d / 60);
+    }
+
+    @Test
+    void eventStartingAsAnotherEndsIsConcurrent() {
+        ConcurrencyProfile profile = ConcurrencyProfile.of(new long[] {0, 10}, new long[] {10, 20}, 0, 20);
+
+        assertThat(profile.getPeakConcurrency()).isEqualTo(2);
+        assertThat(profile.getPeakTime()).isEqualTo(10);
+        assertThat(profile.getTimeAtConcurrency(2)).isZero();
+    }
+
+    @Test
+    void timeOutsideThePeriodIsNotCounted() {
+        ConcurrencyProfile profile = ConcurrencyProfile.of(new long[] {0, 0}, new long[] {100, 100}, 50, 150);
+
+        assertThat(profile.getTimeAtConcurrency(2)).isEqualTo(50);
+        assertThat(profile.getTimeAtConcurrency(0)).isEqualTo(50);
+    }
+
+    @Test
+    void manyEventsCanBeProfiled() {
+        int count = 1_000_000;
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        for (int i = 0; i < count; i++) {
+            starts[i] = i;
+            ends[i] = i + 10;
+        }
+
+        ConcurrencyProfile profile = ConcurrencyProfile.of(starts, ends, 0, count + 10);
+
+        assertThat(profile.getPeakConcurrency()).isEqualTo(11);
+        assertThat(profile.getTimeAtConcurrency(10)).isEqualTo(count - 9);
+    }
+}
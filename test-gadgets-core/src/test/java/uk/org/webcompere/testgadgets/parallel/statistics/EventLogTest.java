@@ -1,12 +1,220 @@
 package uk.org.webcompere.testgadgets.parallel.statistics;
 
-import nl.jqno.equalsverifier.EqualsVerifier;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.NoSuchElementException;
 import org.junit.jupiter.api.Test;
 
 class EventLogTest {
 
     @Test
-    void equalsAndHashCode() {
-        EqualsVerifier.forClass(EventLog.Timepoint.class).verify();
+    void whenEmptyThenNotRunning() {
+        assertThat(new EventLog().isRunning()).isFalse();
+    }
+
+    @Test
+    void whenEmptyThenNoEarliestOrLatest() {
+        EventLog log = new EventLog();
+        assertThatThrownBy(log::getEarliest).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(log::getLatest).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void canRecordMoreEventsThanInitialCapacity() {
+        EventLog log = new EventLog();
+        for (int i = 0; i < 1000; i++) {
+            log.addStart(i * 10L);
+            log.addEnd(i * 10L + 5);
+        }
+
+        assertThat(log.size()).isEqualTo(1000);
+        assertThat(log.getEarliest()).isZero();
+        assertThat(log.getLatest()).isEqualTo(9995L);
+        assertThat(log.totalActivityTime()).isEqualTo(5000.0d);
+    }
+
+    @Test
+    void startsAndFinishesCanBeCopied() {
+        EventLog log = new EventLog();
+        log.addStart(10);
+        log.addEnd(20);
+        log.addStart(30);
+        long[] starts = new long[3];
+        long[] finishes = new long[3];
+
+        assertThat(log.copyStarts(starts, 1)).isEqualTo(3);
+        assertThat(log.copyFinishes(finishes, 1)).isEqualTo(3);
+
+        assertThat(starts).containsExactly(0, 10, 30);
+        assertThat(finishes).containsExactly(0, 20, 31);
+    }
+
+    @Test
+    void overlappingEventsCanBeAddedAsTheyEnd() {
+        EventLog log = new EventLog();
+        log.addEvent(20, 30);
+        log.addEvent(10, 50);
+
+        assertThat(log.isRunning()).isFalse();
+        assertThat(log.getEventCount()).isEqualTo(2);
+        assertThat(log.getEarliest()).isEqualTo(10L);
+        assertThat(log.getLatest()).isEqualTo(50L);
+        assertThat(log.getLatencies().getMax()).isEqualTo(40L);
+        assertThat(log.totalActivityTime()).isEqualTo(40.0d);
+    }
+
+    @Test
+    void cannotEndWhenNothingIsRunning() {
+        EventLog log = new EventLog();
+        log.addStart(10);
+        log.addEnd(20);
+
+        assertThatThrownBy(() -> log.addEnd(30)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void whenKeepingLatestThenMemoryIsBoundedButTotalsAreExact() {
+        EventLog log = new EventLog(EventRetention.latest(4));
+        for (int i = 0; i < 10; i++) {
+            log.addStart(i * 10L);
+            log.addEnd(i * 10L + 5);
+        }
+
+        assertThat(log.size()).isEqualTo(4);
+        assertThat(log.getEventCount()).isEqualTo(10);
+        assertThat(log.getLatencies().getCount()).isEqualTo(10);
+        assertThat(log.getEarliest()).isZero();
+        assertThat(log.getLatest()).isEqualTo(95L);
+        assertThat(log.totalActivityTime()).isEqualTo(50.0d);
+
+        assertThat(log.getStart(0)).isEqualTo(60L);
+        assertThat(log.getEnd(3)).isEqualTo(95L);
+    }
+
+    @Test
+    void whenKeepingLatestThenRunningEventIsKept() {
+        EventLog log = new EventLog(EventRetention.latest(2));
+        for (int i = 0; i < 5; i++) {
+            log.addStart(i * 10L);
+            log.addEnd(i * 10L + 5);
+        }
+        log.addStart(100);
+
+        assertThat(log.isRunning()).isTrue();
+        assertThat(log.getStart(1)).isEqualTo(100L);
+        assertThat(log.getEnd(1)).isEqualTo(-1L);
+        assertThat(log.totalActivityTime()).isEqualTo(26.0d);
+
+        log.addEnd(110);
+        assertThat(log.getEnd(1)).isEqualTo(110L);
+    }
+
+    @Test
+    void whenSamplingThenMemoryIsBoundedButTotalsAreExact() {
+        EventLog log = new EventLog(EventRetention.sample(100));
+        for (int i = 0; i < 10_000; i++) {
+            log.addEvent(i * 10L, i * 10L + 10);
+        }
+
+        assertThat(log.size()).isEqualTo(100);
+        assertThat(log.getEventCount()).isEqualTo(10_000);
+        assertThat(log.totalActivityTime()).isEqualTo(100_000.0d);
+        for (int i = 0; i < log.size(); i++) {
+            assertThat(log.getEnd(i) - log.getStart(i)).isEqualTo(10L);
+        }
+    }
+
+    @Test
+    void boundedActivityTimeMergesOverlappingEvents() {
+        EventLog log = new EventLog(EventRetention.latest(1));
+        log.addEvent(10, 30);
+        log.addEvent(20, 40);
+        log.addEvent(35, 45);
+        log.addEvent(50, 60);
+
+        assertThat(log.totalActivityTime()).isEqualTo(45.0d);
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThatThrownBy(() -> EventRetention.latest(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> EventRetention.sample(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void disjointEventsAreNotMergedIntoOneRun() {
+        EventLog log = new EventLog();
+        log.addStart(0);
+        log.addEnd(10);
+        log.addStart(20);
+        log.addEnd(30);
+
+        assertThat(log.totalActivityTime()).isEqualTo(20.0d);
+        assertThat(log.getActivity().getLongestIdleGap()).isEqualTo(10L);
+    }
+
+    @Test
+    void eventsAddedOutOfOrderAreSortedToFindTheirUnion() {
+        EventLog log = new EventLog();
+        log.addEvent(20, 30);
+        log.addEvent(10, 50);
+        log.addEvent(60, 70);
+        log.addEvent(0, 5);
+
+        ChannelActivity activity = log.getActivity();
+        assertThat(activity.getActiveTime()).isEqualTo(55L);
+        assertThat(activity.getIdleTime()).isEqualTo(15L);
+        assertThat(activity.getIdleGaps()).isEqualTo(2L);
+        assertThat(activity.getLongestIdleGap()).isEqualTo(10L);
+    }
+
+    @Test
+    void runningEventIsIncludedInTheActivity() {
+        EventLog log = new EventLog();
+        log.addStart(0);
+        log.addEnd(10);
+        log.addStart(15);
+
+        ChannelActivity activity = log.getActivity();
+        assertThat(activity.getActiveTime()).isEqualTo(11L);
+        assertThat(activity.getLongestIdleGap()).isEqualTo(5L);
+    }
+
+    @Test
+    void touchingEventsHaveNoIdleGap() {
+        EventLog log = new EventLog();
+        log.addEvent(0, 10);
+        log.addEvent(10, 20);
+
+        assertThat(log.getActivity().getIdleGaps()).isZero();
+        assertThat(log.totalActivityTime()).isEqualTo(20.0d);
+    }
+
+    @Test
+    void waitTimeIsTotalledAcrossEvents() {
+        EventLog log = new EventLog();
+        log.addStart(0);
+        log.beginWait(10);
+        log.endWait(30);
+        log.addEnd(40);
+        log.addStart(50);
+        log.beginWait(60);
+
+        assertThat(log.isWaiting()).isTrue();
+        assertThat(log.getWaitTime()).isEqualTo(20L);
+
+        log.addEnd(65);
+        assertThat(log.isWaiting()).isFalse();
+        assertThat(log.getWaitTime()).isEqualTo(25L);
+    }
+
+    @Test
+    void cannotWaitTwice() {
+        EventLog log = new EventLog();
+        log.addStart(0);
+        log.beginWait(10);
+
+        assertThatThrownBy(() -> log.beginWait(20)).isInstanceOf(IllegalStateException.class);
     }
 }
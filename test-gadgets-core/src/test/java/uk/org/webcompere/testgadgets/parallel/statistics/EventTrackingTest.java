@@ -2,6 +2,10 @@ package uk.org.webcompere.testgadgets.parallel.statistics;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 
 class EventTrackingTest {
@@ -176,4 +180,271 @@ class EventTrackingTest {
 
         assertThat(eventTracking.calculateStatistics().getMaxConcurrency()).isEqualTo(3);
     }
+
+    @Test
+    void whenUsingAFakeClockThenEventsAreTimedByIt() {
+        FakeTimeSource clock = new FakeTimeSource(TimeUnit.MICROSECONDS);
+        EventTracking<String> tracking = new EventTracking<>(clock);
+
+        tracking.start();
+        clock.advance(100);
+        tracking.addStart("c1");
+        clock.advance(Duration.ofNanos(300_000));
+        tracking.addEnd("c1");
+        clock.advance(100);
+        tracking.stop();
+
+        EventStatistics<String> statistics = tracking.calculateStatistics();
+        assertThat(statistics.getTimeUnit()).isEqualTo(TimeUnit.MICROSECONDS);
+        assertThat(statistics.getElapsedTime()).isEqualTo(500);
+        assertThat(statistics.getElapsed()).isEqualTo(Duration.ofNanos(500_000));
+        assertThat(statistics.getActiveTime("c1")).isEqualTo(300.0d);
+        assertThat(statistics.getUtilization("c1")).isEqualTo(0.6d);
+    }
+
+    @Test
+    void defaultTimeSourceIsMilliseconds() {
+        eventTracking.addStart("c1");
+        eventTracking.addEnd("c1");
+
+        assertThat(eventTracking.getTimeSource().getTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+        assertThat(eventTracking.calculateStatistics().getTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void explicitMillisecondTimesMixWithTheDefaultStartAndStop() {
+        eventTracking.start();
+        long now = System.currentTimeMillis();
+        eventTracking.addStart("c1", now);
+        eventTracking.addEnd("c1", now + 10);
+        eventTracking.stop(now + 20);
+
+        assertThat(eventTracking.calculateStatistics().getElapsed())
+                .isBetween(Duration.ofMillis(20), Duration.ofSeconds(5));
+    }
+
+    @Test
+    void startAndStopOfMinusOneMeanTheEarliestAndLatestEvents() {
+        EventTracking<String> tracking = new EventTracking<>(new FakeTimeSource());
+        tracking.start(5);
+        tracking.stop(50);
+        tracking.start(-1);
+        tracking.stop(-1);
+        tracking.addStart("c1", 10);
+        tracking.addEnd("c1", 20);
+
+        assertThat(tracking.calculateStatistics().getElapsedTime()).isEqualTo(10);
+    }
+
+    @Test
+    void activeTimeOfUnknownChannelIsAnError() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 10);
+
+        assertThatThrownBy(() -> eventTracking.calculateStatistics().getActiveTime("c2"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void latenciesAreReportedAsPercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            eventTracking.addStart("c" + (i % 2), i * 1000L);
+            eventTracking.addEnd("c" + (i % 2), i * 1000L + i);
+        }
+
+        EventStatistics<String> statistics = eventTracking.calculateStatistics();
+        assertThat(statistics.getLatencyPercentile(0.5)).isEqualTo(50);
+        assertThat(statistics.getLatencyPercentile(0.99)).isEqualTo(99);
+        assertThat(statistics.getMaxLatency()).isEqualTo(100);
+        assertThat(statistics.getLatencyHistogram().getCount()).isEqualTo(100);
+
+        assertThat(statistics.getLatencyPercentile("c1", 1.0)).isEqualTo(99);
+        assertThat(statistics.getMaxLatency("c0")).isEqualTo(100);
+        assertThat(statistics.getLatencyHistogram("c0").getCount()).isEqualTo(50);
+    }
+
+    @Test
+    void eventsWithoutAnEndHaveNoLatency() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addStart("c1", 10);
+        eventTracking.addEnd("c1", 15);
+
+        assertThat(eventTracking.calculateStatistics().getLatencyHistogram().getCount()).isOne();
+    }
+
+    @Test
+    void latencyOfUnknownChannelIsAnError() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 10);
+
+        assertThatThrownBy(() -> eventTracking.calculateStatistics().getLatencyPercentile("c2", 0.5))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void throughputIsEventsPerSecond() {
+        EventTracking<String> tracking = new EventTracking<>(new FakeTimeSource(TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 10; i++) {
+            tracking.addStart("c1", i * 100L);
+            tracking.addEnd("c1", i * 100L + 50);
+        }
+        tracking.stop(1000);
+
+        assertThat(tracking.calculateStatistics().getThroughput()).isEqualTo(10.0d);
+    }
+
+    @Test
+    void whenNoWindowRequestedThenNoWindows() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 10);
+
+        assertThat(eventTracking.calculateStatistics().getWindows()).isEmpty();
+    }
+
+    @Test
+    void windowsShowTheProfileOverTime() {
+        EventTracking<String> tracking = new EventTracking<>(new FakeTimeSource(TimeUnit.MILLISECONDS));
+        // first window - two channels fully busy, two events complete
+        tracking.addStart("c1", 0);
+        tracking.addStart("c2", 0);
+        tracking.addEnd("c1", 100);
+        tracking.addEnd("c2", 100);
+        // second window - a stall with nothing running
+        // third window - one channel half busy
+        tracking.addStart("c1", 200);
+        tracking.addEnd("c1", 250);
+        tracking.stop(300);
+
+        List<WindowStatistics> windows = tracking.calculateStatistics(Duration.ofMillis(100)).getWindows();
+
+        assertThat(windows).hasSize(3);
+        assertThat(windows.get(0).getStart()).isZero();
+        assertThat(windows.get(0).getEnd()).isEqualTo(100);
+        assertThat(windows.get(0).getMaxConcurrency()).isEqualTo(2);
+        assertThat(windows.get(0).getUtilization()).isEqualTo(1.0d);
+        assertThat(windows.get(0).getCompletedEvents()).isZero();
+
+        assertThat(windows.get(1).getCompletedEvents()).isEqualTo(2);
+        assertThat(windows.get(1).getThroughput()).isEqualTo(20.0d);
+        assertThat(windows.get(1).getMaxConcurrency()).isZero();
+        assertThat(windows.get(1).getUtilization()).isZero();
+
+        assertThat(windows.get(2).getCompletedEvents()).isOne();
+        assertThat(windows.get(2).getMaxConcurrency()).isOne();
+        assertThat(windows.get(2).getUtilization()).isEqualTo(0.25d);
+        assertThat(windows.get(2).getTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void windowMustBePositive() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 100);
+
+        assertThatThrownBy(() -> eventTracking.calculateStatistics(Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> eventTracking.calculateStatistics(Duration.ofMillis(-1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void whenTooManyWindowsThenError() {
+        EventTracking<String> tracking = new EventTracking<>(new FakeTimeSource());
+        tracking.addStart("c1", 0);
+        tracking.addEnd("c1", Duration.ofDays(1).toNanos());
+
+        assertThatThrownBy(() -> tracking.calculateStatistics(Duration.ofNanos(1)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("use a longer window");
+    }
+
+    @Test
+    void aWindowLongerThanThePeriodIsOneWindow() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 100);
+
+        assertThat(eventTracking.calculateStatistics(Duration.ofDays(365_000)).getWindows()).hasSize(1);
+    }
+
+    @Test
+    void lastWindowCanBeShorter() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 150);
+
+        List<WindowStatistics> windows = eventTracking.calculateStatistics(Duration.ofMillis(100)).getWindows();
+
+        assertThat(windows).hasSize(2);
+        assertThat(windows.get(1).getEnd()).isEqualTo(150);
+        assertThat(windows.get(1).getUtilization()).isEqualTo(1.0d);
+        assertThat(windows.get(1).getCompletedEvents()).isOne();
+    }
+
+    @Test
+    void eventsRunningAcrossAWindowCountTowardsItsConcurrency() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addStart("c2", 50);
+        eventTracking.addEnd("c1", 300);
+        eventTracking.addEnd("c2", 300);
+
+        List<WindowStatistics> windows = eventTracking.calculateStatistics(Duration.ofMillis(100)).getWindows();
+
+        assertThat(windows).extracting(WindowStatistics::getMaxConcurrency).containsExactly(2, 2, 2);
+    }
+
+    @Test
+    void overlappingEventsOnTheSameChannelAreConcurrent() {
+        eventTracking.addStart("c1", 10);
+        eventTracking.addStart("c1", 10);
+
+        assertThat(eventTracking.calculateStatistics().getMaxConcurrency()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrencyProfileIsCalculated() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addStart("c2", 10);
+        eventTracking.addEnd("c1", 20);
+        eventTracking.addEnd("c2", 40);
+
+        ConcurrencyProfile profile = eventTracking.calculateStatistics().getConcurrencyProfile().get();
+        assertThat(profile.getPeakConcurrency()).isEqualTo(2);
+        assertThat(profile.getPeakTime()).isEqualTo(10);
+        assertThat(profile.getTimeAtConcurrency(1)).isEqualTo(30);
+        assertThat(profile.getTimeAtConcurrency(2)).isEqualTo(10);
+    }
+
+    @Test
+    void whenNoEventsThenNoConcurrency() {
+        assertThat(eventTracking.calculateStatistics().getMaxConcurrency()).isZero();
+    }
+
+    @Test
+    void idleGapsBetweenEventsAreReported() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 10);
+        eventTracking.addStart("c1", 30);
+        eventTracking.addEnd("c1", 40);
+        eventTracking.addStart("c1", 45);
+        eventTracking.addEnd("c1", 50);
+        eventTracking.addStart("c2", 0);
+        eventTracking.addEnd("c2", 50);
+
+        EventStatistics<String> statistics = eventTracking.calculateStatistics();
+        ChannelActivity activity = statistics.getActivity("c1");
+        assertThat(activity.getActiveTime()).isEqualTo(25);
+        assertThat(activity.getIdleTime()).isEqualTo(25);
+        assertThat(activity.getIdleGaps()).isEqualTo(2);
+        assertThat(activity.getLongestIdleGap()).isEqualTo(20);
+        assertThat(statistics.getActivity("c2").getIdleGaps()).isZero();
+        assertThat(statistics.getLongestIdleGap()).isEqualTo(20);
+        assertThat(statistics.getActiveTime("c1")).isEqualTo(25.0d);
+    }
+
+    @Test
+    void activityOfUnknownChannelIsAnError() {
+        eventTracking.addStart("c1", 0);
+        eventTracking.addEnd("c1", 10);
+
+        assertThatThrownBy(() -> eventTracking.calculateStatistics().getActivity("c2"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
 }
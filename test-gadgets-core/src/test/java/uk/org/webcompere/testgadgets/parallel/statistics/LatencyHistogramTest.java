@@ -0,0 +1,95 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+    private LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void whenEmptyThenEverythingIsZero() {
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.getMin()).isZero();
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getMean()).isZero();
+        assertThat(histogram.getValueAtPercentile(0.99)).isZero();
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getValueAtPercentile(0.5)).isEqualTo(25);
+        assertThat(histogram.getValueAtPercentile(0.9)).isEqualTo(45);
+        assertThat(histogram.getValueAtPercentile(1.0)).isEqualTo(50);
+        assertThat(histogram.getMin()).isEqualTo(1);
+        assertThat(histogram.getMean()).isEqualTo(25.5d);
+    }
+
+    @Test
+    void largeValuesAreWithinPrecision() {
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000);
+        }
+
+        assertThat(histogram.getValueAtPercentile(0.5)).isCloseTo(50_000_000L, withinPercentage(3));
+        assertThat(histogram.getValueAtPercentile(0.99)).isCloseTo(99_000_000L, withinPercentage(3));
+        assertThat(histogram.getValueAtPercentile(0.999)).isCloseTo(99_900_000L, withinPercentage(3));
+        assertThat(histogram.getMax()).isEqualTo(100_000_000L);
+    }
+
+    @Test
+    void percentileNeverExceedsMax() {
+        histogram.record(1_000_001);
+
+        assertThat(histogram.getValueAtPercentile(0.5)).isEqualTo(1_000_001);
+    }
+
+    @Test
+    void hugeValuesCanBeRecorded() {
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getValueAtPercentile(1.0)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void negativeValuesAreZero() {
+        histogram.record(-10);
+
+        assertThat(histogram.getMax()).isZero();
+        assertThat(histogram.getCount()).isOne();
+    }
+
+    @Test
+    void percentileMustBeAFraction() {
+        assertThatThrownBy(() -> histogram.getValueAtPercentile(99)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void histogramsCanBeAdded() {
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.record(10);
+        other.record(1_000_000);
+
+        histogram.add(other);
+
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.getMin()).isEqualTo(10);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000);
+        assertThat(histogram.getValueAtPercentile(0.5)).isEqualTo(10);
+    }
+
+    @Test
+    void copyIsIndependent() {
+        histogram.record(10);
+        LatencyHistogram copy = histogram.copy();
+        histogram.record(20);
+
+        assertThat(copy.getCount()).isOne();
+    }
+}
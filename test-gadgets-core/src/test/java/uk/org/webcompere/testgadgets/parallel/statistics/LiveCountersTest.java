@@ -0,0 +1,96 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.org.webcompere.testgadgets.parallel.Concurrently.executeMultiple;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class LiveCountersTest {
+    private FakeTimeSource clock = new FakeTimeSource();
+    private LiveCounters counters = new LiveCounters(clock);
+
+    @Test
+    void whenNothingHappensThenSnapshotIsEmpty() {
+        MeterSnapshot snapshot = counters.snapshot();
+
+        assertThat(snapshot.getStartedEvents()).isZero();
+        assertThat(snapshot.getCompletedEvents()).isZero();
+        assertThat(snapshot.getInFlight()).isZero();
+        assertThat(snapshot.getPeakConcurrency()).isZero();
+        assertThat(snapshot.getIntervalThroughput()).isZero();
+        assertThat(snapshot.getTimeUnit()).isEqualTo(TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    void inFlightAndPeakConcurrencyAreTracked() {
+        counters.started();
+        counters.started();
+        counters.started();
+        counters.ended(10);
+
+        MeterSnapshot snapshot = counters.snapshot();
+        assertThat(snapshot.getStartedEvents()).isEqualTo(3);
+        assertThat(snapshot.getCompletedEvents()).isOne();
+        assertThat(snapshot.getInFlight()).isEqualTo(2);
+        assertThat(snapshot.getPeakConcurrency()).isEqualTo(3);
+    }
+
+    @Test
+    void abandonedEventsAreNoLongerInFlight() {
+        counters.started();
+        counters.abandoned();
+
+        MeterSnapshot snapshot = counters.snapshot();
+        assertThat(snapshot.getInFlight()).isZero();
+        assertThat(snapshot.getCompletedEvents()).isOne();
+        assertThat(snapshot.getIntervalLatencies().getCount()).isZero();
+    }
+
+    @Test
+    void eachSnapshotHasTheLatenciesAndThroughputOfItsInterval() {
+        clock.set(1_000_000_000L);
+        counters.snapshot();
+
+        counters.started();
+        counters.ended(100);
+        counters.started();
+        counters.ended(300);
+        clock.advance(500_000_000L);
+
+        MeterSnapshot first = counters.snapshot();
+        assertThat(first.getInterval()).isEqualTo(500_000_000L);
+        assertThat(first.getIntervalCompletedEvents()).isEqualTo(2);
+        assertThat(first.getIntervalThroughput()).isEqualTo(4.0d);
+        assertThat(first.getIntervalLatencies().getMax()).isEqualTo(300);
+
+        counters.started();
+        counters.ended(50);
+        clock.advance(1_000_000_000L);
+
+        MeterSnapshot second = counters.snapshot();
+        assertThat(second.getTime()).isEqualTo(2_500_000_000L);
+        assertThat(second.getCompletedEvents()).isEqualTo(3);
+        assertThat(second.getIntervalCompletedEvents()).isOne();
+        assertThat(second.getIntervalThroughput()).isEqualTo(1.0d);
+        assertThat(second.getIntervalLatencies().getMax()).isEqualTo(50);
+    }
+
+    @Test
+    void latenciesFromManyThreadsAreAllInTheSnapshots() {
+        long[] snapshotted = new long[1];
+        executeMultiple(9, index -> {
+            for (int i = 0; i < 1000; i++) {
+                if (index == 0) {
+                    snapshotted[0] += counters.snapshot().getIntervalLatencies().getCount();
+                } else {
+                    counters.started();
+                    counters.ended(i);
+                }
+            }
+        });
+        snapshotted[0] += counters.snapshot().getIntervalLatencies().getCount();
+
+        assertThat(snapshotted[0]).isEqualTo(8000);
+    }
+}
@@ -0,0 +1,142 @@
+package uk.org.webcompere.testgadgets.parallel.statistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TraceExportTest {
+    private FakeTimeSource clock = new FakeTimeSource();
+    private EventTracking<String> tracking = new EventTracking<>(clock);
+
+    @Test
+    void emptyTrackingIsAnEmptyTrace() throws Exception {
+        JsonNode trace = chromeTrace();
+
+        assertThat(trace.get("traceEvents")).isEmpty();
+    }
+
+    @Test
+    void eachChannelIsANamedThreadWithItsEvents() throws Exception {
+        tracking.addStart("c1", 1_000);
+        tracking.addEnd("c1", 3_500);
+        tracking.addStart("c2", 2_000);
+
+        JsonNode events = chromeTrace().get("traceEvents");
+
+        assertThat(events).hasSize(4);
+        JsonNode c1Name = findEvent(events, "M", "c1");
+        JsonNode c2Name = findEvent(events, "M", "c2");
+        assertThat(c1Name.get("tid").asInt()).isNotEqualTo(c2Name.get("tid").asInt());
+
+        JsonNode c1Event = findEventOnThread(events, c1Name.get("tid").asInt());
+        assertThat(c1Event.get("ts").asDouble()).isEqualTo(1.0d);
+        assertThat(c1Event.get("dur").asDouble()).isEqualTo(2.5d);
+
+        JsonNode c2Event = findEventOnThread(events, c2Name.get("tid").asInt());
+        assertThat(c2Event.get("ts").asDouble()).isEqualTo(2.0d);
+        assertThat(c2Event.get("dur").asDouble()).isEqualTo(0.001d);
+    }
+
+    @Test
+    void channelNamesAreEscaped() throws Exception {
+        tracking.addStart("a \"quoted\" \\ name\n", 0);
+
+        JsonNode events = chromeTrace().get("traceEvents");
+
+        assertThat(findEvent(events, "M", "a \"quoted\" \\ name\n")).isNotNull();
+    }
+
+    @Test
+    void timesInOtherUnitsAreConvertedToMicroseconds() throws Exception {
+        EventTracking<String> millisTracking = new EventTracking<>(new FakeTimeSource(TimeUnit.MILLISECONDS));
+        millisTracking.addStart("c1", 2);
+        millisTracking.addEnd("c1", 5);
+
+        StringWriter writer = new StringWriter();
+        millisTracking.writeChromeTrace(writer);
+        JsonNode events = new ObjectMapper().readTree(writer.toString()).get("traceEvents");
+
+        JsonNode event = findEventOnThread(events, 1);
+        assertThat(event.get("ts").asLong()).isEqualTo(2000L);
+        assertThat(event.get("dur").asLong()).isEqualTo(3000L);
+    }
+
+    @Test
+    void binaryCanBeReadBack() throws Exception {
+        tracking.addStart("c1", 10);
+        tracking.addEnd("c1", 20);
+        tracking.addStart("c1", 30);
+        tracking.addEnd("c1", 50);
+        tracking.addStart("c2", 15);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        tracking.writeBinary(output);
+        EventTracking<String> readBack = EventTracking.readBinary(new ByteArrayInputStream(output.toByteArray()));
+
+        assertThat(readBack.getChannels()).containsExactlyInAnyOrder("c1", "c2");
+        assertThat(readBack.getTimeSource().getTimeUnit()).isEqualTo(TimeUnit.NANOSECONDS);
+        EventLog c1 = readBack.getLog("c1").orElseThrow();
+        assertThat(c1.size()).isEqualTo(2);
+        assertThat(c1.getStart(1)).isEqualTo(30L);
+        assertThat(c1.getEnd(1)).isEqualTo(50L);
+        assertThat(readBack.getLog("c2").orElseThrow().isRunning()).isTrue();
+
+        EventStatistics<String> original = tracking.calculateStatistics();
+        EventStatistics<String> statistics = readBack.calculateStatistics();
+        assertThat(statistics.getTotalEvents()).isEqualTo(original.getTotalEvents());
+        assertThat(statistics.getMaxConcurrency()).isEqualTo(original.getMaxConcurrency());
+        assertThat(statistics.getMaxLatency()).isEqualTo(original.getMaxLatency());
+    }
+
+    @Test
+    void binaryIsCompact() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            tracking.addStart("c1", i * 10L);
+            tracking.addEnd("c1", i * 10L + 5);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        tracking.writeBinary(output);
+
+        assertThat(output.size()).isLessThan(1000 * 16 + 100);
+    }
+
+    @Test
+    void whenNotARecordingThenCannotRead() {
+        assertThatThrownBy(() -> EventTracking.readBinary(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5})))
+                .isInstanceOf(IOException.class);
+    }
+
+    private JsonNode chromeTrace() throws IOException {
+        StringWriter writer = new StringWriter();
+        tracking.writeChromeTrace(writer);
+        return new ObjectMapper().readTree(writer.toString());
+    }
+
+    private static JsonNode findEvent(JsonNode events, String phase, String threadName) {
+        for (JsonNode event : events) {
+            if (event.get("ph").asText().equals(phase)
+                    && event.get("args").get("name").asText().equals(threadName)) {
+                return event;
+            }
+        }
+        return null;
+    }
+
+    private static JsonNode findEventOnThread(JsonNode events, int threadId) {
+        for (JsonNode event : events) {
+            if (event.get("ph").asText().equals("X") && event.get("tid").asInt() == threadId) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
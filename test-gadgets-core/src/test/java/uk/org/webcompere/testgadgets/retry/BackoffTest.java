@@ -0,0 +1,68 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class BackoffTest {
+
+    @Test
+    void fixedIsAlwaysTheSame() {
+        Backoff backoff = Backoff.fixed(Duration.ofMillis(10));
+
+        assertThat(backoff.delay(1, Duration.ZERO)).isEqualTo(Duration.ofMillis(10));
+        assertThat(backoff.delay(5, Duration.ofMillis(10))).isEqualTo(Duration.ofMillis(10));
+    }
+
+    @Test
+    void exponentialDoublesUpToTheCap() {
+        Backoff backoff = Backoff.exponential(Duration.ofMillis(10), Duration.ofMillis(50));
+
+        assertThat(backoff.delay(1, Duration.ZERO)).isEqualTo(Duration.ofMillis(10));
+        assertThat(backoff.delay(2, Duration.ZERO)).isEqualTo(Duration.ofMillis(20));
+        assertThat(backoff.delay(3, Duration.ZERO)).isEqualTo(Duration.ofMillis(40));
+        assertThat(backoff.delay(4, Duration.ZERO)).isEqualTo(Duration.ofMillis(50));
+        assertThat(backoff.delay(1000, Duration.ZERO)).isEqualTo(Duration.ofMillis(50));
+    }
+
+    @Test
+    void exponentialCanUseAnotherMultiplier() {
+        Backoff backoff = Backoff.exponential(Duration.ofMillis(10), 1.5d, Duration.ofSeconds(1));
+
+        assertThat(backoff.delay(3, Duration.ZERO)).isEqualTo(Duration.ofNanos(22_500_000));
+    }
+
+    @Test
+    void exponentialCannotShrink() {
+        assertThatThrownBy(() -> Backoff.exponential(Duration.ofMillis(10), 0.5d, Duration.ofSeconds(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void fibonacciGrowsUpToTheCap() {
+        Backoff backoff = Backoff.fibonacci(Duration.ofMillis(10), Duration.ofMillis(100));
+
+        assertThat(backoff.delay(1, Duration.ZERO)).isEqualTo(Duration.ofMillis(10));
+        assertThat(backoff.delay(2, Duration.ZERO)).isEqualTo(Duration.ofMillis(10));
+        assertThat(backoff.delay(3, Duration.ZERO)).isEqualTo(Duration.ofMillis(20));
+        assertThat(backoff.delay(4, Duration.ZERO)).isEqualTo(Duration.ofMillis(30));
+        assertThat(backoff.delay(5, Duration.ZERO)).isEqualTo(Duration.ofMillis(50));
+        assertThat(backoff.delay(6, Duration.ZERO)).isEqualTo(Duration.ofMillis(80));
+        assertThat(backoff.delay(7, Duration.ZERO)).isEqualTo(Duration.ofMillis(100));
+        assertThat(backoff.delay(Integer.MAX_VALUE, Duration.ZERO)).isEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    void decorrelatedJitterIsBetweenTheBaseAndThreeTimesThePrevious() {
+        Backoff backoff = Backoff.decorrelatedJitter(Duration.ofMillis(10), Duration.ofMillis(500));
+
+        assertThat(backoff.delay(1, Duration.ZERO)).isEqualTo(Duration.ofMillis(10));
+        for (int i = 0; i < 100; i++) {
+            assertThat(backoff.delay(2, Duration.ofMillis(20)))
+                    .isBetween(Duration.ofMillis(10), Duration.ofMillis(60));
+            assertThat(backoff.delay(3, Duration.ofMillis(400))).isLessThanOrEqualTo(Duration.ofMillis(500));
+        }
+    }
+}
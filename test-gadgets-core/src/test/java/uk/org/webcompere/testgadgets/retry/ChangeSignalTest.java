@@ -0,0 +1,113 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.jupiter.api.Test;
+
+class ChangeSignalTest {
+    private ChangeSignal signal = new ChangeSignal();
+
+    @Test
+    void whenNotSignalledThenWaitTimesOut() throws Exception {
+        assertThat(signal.awaitChange(signal.getVersion(), Duration.ofMillis(10))).isFalse();
+    }
+
+    @Test
+    void whenAlreadySignalledThenDoesNotWait() throws Exception {
+        long version = signal.getVersion();
+        signal.signal();
+
+        assertThat(signal.awaitChange(version, Duration.ofDays(1))).isTrue();
+    }
+
+    @Test
+    void signalWakesAWaitingThread() throws Exception {
+        long version = signal.getVersion();
+        Thread signaller = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            signal.signal();
+        });
+        signaller.start();
+
+        assertThat(signal.awaitChange(version, Duration.ofSeconds(5))).isTrue();
+        signaller.join();
+    }
+
+    @Test
+    void canBeRegisteredAsAListener() {
+        List<Runnable> listeners = new ArrayList<>();
+        ChangeSignal registered = ChangeSignal.listeningTo(listeners::add);
+
+        listeners.forEach(Runnable::run);
+
+        assertThat(registered.getVersion()).isOne();
+    }
+
+    @Test
+    void signallingQueueSignalsEachChange() throws Exception {
+        BlockingQueue<String> queue = signal.signalling(new LinkedBlockingQueue<>());
+
+        queue.put("a");
+        queue.offer("b");
+        queue.add("c");
+        assertThat(signal.getVersion()).isEqualTo(3);
+
+        queue.take();
+        queue.drainTo(new ArrayList<>());
+        assertThat(signal.getVersion()).isEqualTo(5);
+    }
+
+    @Test
+    void signallingQueueDoesNotSignalWhenNothingChanges() {
+        BlockingQueue<String> queue = signal.signalling(new LinkedBlockingQueue<>(1));
+        queue.offer("a");
+
+        assertThat(queue.offer("b")).isFalse();
+        queue.peek();
+        queue.poll();
+        assertThat(queue.poll()).isNull();
+
+        assertThat(signal.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void signallingConditionWakesItsWaitersAndSignalsTheChange() throws Exception {
+        ReentrantLock lock = new ReentrantLock();
+        Condition condition = signal.signalling(lock.newCondition());
+        boolean[] ready = new boolean[1];
+        Thread waiter = new Thread(() -> {
+            lock.lock();
+            try {
+                while (!ready[0]) {
+                    condition.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+        waiter.start();
+
+        lock.lock();
+        try {
+            ready[0] = true;
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        waiter.join(5000);
+
+        assertThat(waiter.isAlive()).isFalse();
+        assertThat(signal.getVersion()).isOne();
+    }
+}
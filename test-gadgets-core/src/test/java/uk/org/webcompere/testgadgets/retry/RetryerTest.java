@@ -9,10 +9,21 @@ import static uk.org.webcompere.testgadgets.retry.Retryer.retryer;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import uk.org.webcompere.testgadgets.ThrowingRunnable;
 
@@ -50,7 +61,7 @@ class RetryerTest {
 
     @Test
     void whenItAlwaysFailsWithError() throws Exception {
-        given(callable.call()).willThrow(new OutOfMemoryError("Error!!!"));
+        given(callable.call()).willThrow(new AssertionError("Error!!!"));
 
         assertThatThrownBy(() -> {
                     try {
@@ -59,7 +70,25 @@ class RetryerTest {
                         verify(callable, times(10)).call();
                     }
                 })
-                .isInstanceOf(OutOfMemoryError.class);
+                .isInstanceOf(AssertionError.class);
+    }
+
+    @Test
+    void whenItRunsOutOfMemoryThenNotRetried() throws Exception {
+        given(callable.call()).willThrow(new OutOfMemoryError("Error!!!"));
+
+        assertThatThrownBy(() -> retry(callable, Retryer.repeat().times(10))).isInstanceOf(OutOfMemoryError.class);
+
+        verify(callable, times(1)).call();
+    }
+
+    @Test
+    void whenClassCannotBeLoadedThenNotRetried() throws Exception {
+        given(callable.call()).willThrow(new NoClassDefFoundError("Missing"));
+
+        assertThatThrownBy(() -> retryer().times(10).retry(callable)).isInstanceOf(NoClassDefFoundError.class);
+
+        verify(callable, times(1)).call();
     }
 
     @Test
@@ -110,4 +139,314 @@ class RetryerTest {
 
         then(runnable).should(times(3)).run();
     }
+
+    @Test
+    void backoffDecidesTheWaitBetween() throws Exception {
+        willThrow(new IOException("My exception"))
+                .willThrow(new IOException("My exception"))
+                .willDoNothing()
+                .given(runnable)
+                .run();
+
+        retryer()
+                .times(10)
+                .backoff(Backoff.exponential(Duration.ofMillis(1), Duration.ofMillis(5)))
+                .retry(runnable);
+
+        then(runnable).should(times(3)).run();
+    }
+
+    @Test
+    void whenDeadlinePassesThenStopsRetrying() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> retryer()
+                        .times(Integer.MAX_VALUE)
+                        .waitBetween(Duration.ofMillis(20))
+                        .within(Duration.ofMillis(100))
+                        .retry(callable))
+                .isInstanceOf(IOException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start))
+                .isGreaterThanOrEqualTo(Duration.ofMillis(100))
+                .isLessThan(Duration.ofSeconds(5));
+        verify(callable, atMost(7)).call();
+    }
+
+    @Test
+    void whenWaitIsLongerThanDeadlineThenLastAttemptIsAtTheDeadline() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception")).willReturn("Hello world!");
+        long start = System.nanoTime();
+
+        assertThat(retryer()
+                        .waitBetween(Duration.ofSeconds(30))
+                        .within(Duration.ofMillis(50))
+                        .retry(callable))
+                .isEqualTo("Hello world!");
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void whenRetryingAsyncThenFailsAndThenPasses() throws Exception {
+        given(callable.call())
+                .willThrow(new IOException("My exception"))
+                .willThrow(new IOException("My exception"))
+                .willReturn("Hello world!");
+
+        CompletableFuture<String> result =
+                retryer().times(10).waitBetween(Duration.ofMillis(5)).retryAsync(callable);
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("Hello world!");
+        verify(callable, times(3)).call();
+    }
+
+    @Test
+    void whenRetryingAsyncAndAlwaysFailsThenFutureFails() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+
+        CompletableFuture<String> result =
+                retryer().times(3).waitBetween(Duration.ofMillis(1)).retryAsync(callable);
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IOException.class);
+        verify(callable, times(3)).call();
+    }
+
+    @Test
+    void manyAsyncRetriesCanWaitOnAFewThreads() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        try {
+            AtomicInteger calls = new AtomicInteger();
+            List<CompletableFuture<Integer>> results = IntStream.range(0, 200)
+                    .mapToObj(i -> new AtomicInteger())
+                    .map(ownCalls -> retryer()
+                            .times(10)
+                            .waitBetween(Duration.ofMillis(10))
+                            .retryAsync(() -> failUntilSecondCall(ownCalls, calls), scheduler))
+                    .collect(Collectors.toList());
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+            assertThat(calls.get()).isEqualTo(400);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void cancellingAsyncRetryStopsTheAttempts() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+
+        CompletableFuture<String> result =
+                retryer().times(Integer.MAX_VALUE).waitBetween(Duration.ofMillis(20)).retryAsync(callable);
+        Thread.sleep(50);
+        result.cancel(false);
+        Thread.sleep(50);
+
+        // at most one more attempt can have been in progress while cancelling
+        Mockito.<Object>clearInvocations(callable);
+        Thread.sleep(100);
+        verify(callable, atMost(1)).call();
+    }
+
+    @Test
+    void whenInterruptedThenStopsRetryingAndKeepsTheInterrupt() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+        Thread.currentThread().interrupt();
+
+        try {
+            assertThatThrownBy(() -> retry(callable, Retryer.repeat().times(10)))
+                    .isInstanceOf(IOException.class);
+            assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            verify(callable, times(1)).call();
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void retryOnChangeTriesAgainWhenSignalled() throws Exception {
+        ChangeSignal signal = new ChangeSignal();
+        AtomicInteger state = new AtomicInteger();
+        Thread changer = new Thread(() -> {
+            for (int i = 0; i < 3; i++) {
+                state.incrementAndGet();
+                signal.signal();
+            }
+        });
+
+        Callable<Integer> check = () -> {
+            assertThat(state.get()).isEqualTo(3);
+            return state.get();
+        };
+
+        long start = System.nanoTime();
+        changer.start();
+        int result = retryer().times(100).within(Duration.ofSeconds(30)).retryOnChange(check, signal);
+        changer.join();
+
+        assertThat(result).isEqualTo(3);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void whenNoChangeThenRetryOnChangeStopsAtTheDeadline() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+
+        assertThatThrownBy(() -> retryer().within(Duration.ofMillis(50)).retryOnChange(callable, new ChangeSignal()))
+                .isInstanceOf(IOException.class);
+
+        verify(callable, times(2)).call();
+    }
+
+    @Test
+    void retryOnChangeStopsAfterTheMaximumTimes() {
+        ChangeSignal signal = new ChangeSignal();
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> retryer().times(3).within(Duration.ofSeconds(30)).retryOnChange(() -> {
+                    calls.incrementAndGet();
+                    signal.signal();
+                    throw new IOException("My exception");
+                }, signal))
+                .isInstanceOf(IOException.class);
+
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void retryOnChangeNeedsADeadline() {
+        assertThatThrownBy(() -> retryer().retryOnChange(callable, new ChangeSignal()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void whenErrorIsNotRetriedThenThrownStraightAway() throws Exception {
+        given(callable.call()).willThrow(new OutOfMemoryError("Error!!!"));
+
+        assertThatThrownBy(() -> retryer().times(10).retryOn(Exception.class::isInstance).retry(callable))
+                .isInstanceOf(OutOfMemoryError.class);
+
+        verify(callable, times(1)).call();
+    }
+
+    @Test
+    void whenErrorIsRetriedThenRetries() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception")).willReturn("Hello world!");
+
+        assertThat(retryer().retryOn(Exception.class::isInstance).retry(callable)).isEqualTo("Hello world!");
+    }
+
+    @Test
+    void retryUntilResultMatches() throws Exception {
+        given(callable.call()).willReturn("starting", "starting", "ready");
+
+        assertThat(retryer()
+                        .times(10)
+                        .waitBetween(Duration.ofMillis(1))
+                        .retryUntil(callable, "ready"::equals))
+                .isEqualTo("ready");
+
+        verify(callable, times(3)).call();
+    }
+
+    @Test
+    void whenResultNeverMatchesThenAssertionError() throws Exception {
+        given(callable.call()).willReturn("starting");
+
+        assertThatThrownBy(() -> retryer()
+                        .waitBetween(Duration.ofMillis(1))
+                        .retryOn(IOException.class::isInstance)
+                        .retryUntil(callable, "ready"::equals))
+                .isInstanceOf(AssertionError.class)
+                .hasMessage("Result did not match: starting");
+
+        verify(callable, times(3)).call();
+    }
+
+    @Test
+    void attemptsAreReported() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception")).willReturn("Hello world!");
+        List<Attempts> reports = new ArrayList<>();
+
+        retryer().waitBetween(Duration.ofMillis(20)).onAttempts(reports::add).retry(callable);
+
+        assertThat(reports).hasSize(1);
+        Attempts attempts = reports.get(0);
+        assertThat(attempts.isSucceeded()).isTrue();
+        assertThat(attempts.getCount()).isEqualTo(2);
+        assertThat(attempts.getLatencies()).hasSize(2);
+        assertThat(attempts.getWaiting()).isGreaterThanOrEqualTo(Duration.ofMillis(20));
+        assertThat(attempts.getElapsed()).isGreaterThanOrEqualTo(attempts.getWaiting());
+    }
+
+    @Test
+    void failedAttemptsAreReported() throws Exception {
+        given(callable.call()).willThrow(new IOException("My exception"));
+        List<Attempts> reports = new ArrayList<>();
+
+        assertThatThrownBy(() -> retryer()
+                        .waitBetween(Duration.ofMillis(1))
+                        .onAttempts(reports::add)
+                        .retryAsync(callable)
+                        .get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class);
+
+        assertThat(reports).hasSize(1);
+        assertThat(reports.get(0).isSucceeded()).isFalse();
+        assertThat(reports.get(0).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    void whenAttemptsListenerFailsThenTheSucceededOperationIsNotRetried() throws Exception {
+        given(callable.call()).willReturn("Hello world!");
+
+        assertThatThrownBy(() -> retryer().times(3).onAttempts(attempts -> {
+                    throw new IllegalStateException("Listener failed");
+                }).retry(callable))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(callable, times(1)).call();
+    }
+
+    @Test
+    void whenAttemptsListenerFailsThenRetryOnChangeDoesNotRetry() throws Exception {
+        given(callable.call()).willReturn("Hello world!");
+
+        assertThatThrownBy(() -> retryer().times(3)
+                        .within(Duration.ofSeconds(5))
+                        .onAttempts(attempts -> {
+                            throw new IllegalStateException("Listener failed");
+                        })
+                        .retryOnChange(callable, new ChangeSignal()))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(callable, times(1)).call();
+    }
+
+    @Test
+    void whenAttemptsListenerFailsThenAsyncRetryCompletesWithItsError() throws Exception {
+        given(callable.call()).willReturn("Hello world!");
+
+        assertThatThrownBy(() -> retryer().times(3)
+                        .onAttempts(attempts -> {
+                            throw new IllegalStateException("Listener failed");
+                        })
+                        .retryAsync(callable)
+                        .get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        verify(callable, times(1)).call();
+    }
+
+    private static Integer failUntilSecondCall(AtomicInteger ownCalls, AtomicInteger allCalls) throws IOException {
+        allCalls.incrementAndGet();
+        if (ownCalls.incrementAndGet() < 2) {
+            throw new IOException("Not yet");
+        }
+        return ownCalls.get();
+    }
 }
@@ -0,0 +1,176 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Collects the attempts of each test run by {@link RetryTests}, to report which tests are flaky and
+ * how much time retrying them costs. Share one report between the test classes via a static field, and
+ * write it once the run is over - e.g. with {@link #writeOnExit(Path)}. Thread safe.
+ */
+public class FlakinessReport {
+    private final List<TestAttempts> tests = new ArrayList<>();
+
+    /**
+     * The attempts of one test
+     */
+    public static class TestAttempts {
+        private final String test;
+        private final Attempts attempts;
+
+        TestAttempts(String test, Attempts attempts) {
+            this.test = test;
+            this.attempts = attempts;
+        }
+
+        /**
+         * The name of the test
+         * @return the test's class and method name
+         */
+        public String getTest() {
+            return test;
+        }
+
+        /**
+         * How many times the test was run
+         * @return the number of attempts
+         */
+        public int getAttempts() {
+            return attempts.getCount();
+        }
+
+        /**
+         * Did the test pass in the end
+         * @return true if an attempt passed
+         */
+        public boolean isPassed() {
+            return attempts.isSucceeded();
+        }
+
+        /**
+         * Was the test flaky - it failed and then passed
+         * @return true if the test passed after a retry
+         */
+        public boolean isFlaky() {
+            return isPassed() && getAttempts() > 1;
+        }
+
+        /**
+         * The time spent on the retries - everything after the first attempt
+         * @return the time the retries cost
+         */
+        public Duration getRetryTime() {
+            return getAttempts() == 0 ? Duration.ZERO : attempts.getElapsed().minus(attempts.getLatencies().get(0));
+        }
+
+        @Override
+        public String toString() {
+            return test + " attempts=" + getAttempts() + " passed=" + isPassed() + " retryTime=" + getRetryTime();
+        }
+    }
+
+    /**
+     * Record the attempts of a test
+     * @param test the name of the test
+     * @param attempts the attempts
+     */
+    public synchronized void record(String test, Attempts attempts) {
+        tests.add(new TestAttempts(test, attempts));
+    }
+
+    /**
+     * The attempts of all the tests so far
+     * @return a copy of the attempts, in the order the tests finished
+     */
+    public synchronized List<TestAttempts> getTests() {
+        return new ArrayList<>(tests);
+    }
+
+    /**
+     * The tests which failed and then passed
+     * @return the flaky tests
+     */
+    public synchronized List<TestAttempts> getFlakyTests() {
+        List<TestAttempts> flaky = new ArrayList<>();
+        for (TestAttempts test : tests) {
+            if (test.isFlaky()) {
+                flaky.add(test);
+            }
+        }
+        return flaky;
+    }
+
+    /**
+     * The time spent retrying across all the tests
+     * @return the total time retries cost
+     */
+    public synchronized Duration getTotalRetryTime() {
+        Duration total = Duration.ZERO;
+        for (TestAttempts test : tests) {
+            total = total.plus(test.getRetryTime());
+        }
+        return total;
+    }
+
+    /**
+     * Write the report - a summary, then each test which was retried, costliest first
+     * @param writer the destination - not closed by this method
+     * @throws IOException on error writing
+     */
+    public void write(Writer writer) throws IOException {
+        List<TestAttempts> snapshot = getTests();
+        List<TestAttempts> retried = new ArrayList<>();
+        long extraAttempts = 0;
+        for (TestAttempts test : snapshot) {
+            if (test.getAttempts() > 1) {
+                retried.add(test);
+                extraAttempts += test.getAttempts() - 1;
+            }
+        }
+        retried.sort(Collections.reverseOrder(Comparator.comparing(TestAttempts::getRetryTime)));
+
+        writer.write("Tests: " + snapshot.size() + ", retried: " + retried.size() + ", flaky: "
+                + getFlakyTests().size() + ", extra attempts: " + extraAttempts + ", retry time: "
+                + getTotalRetryTime() + System.lineSeparator());
+        for (TestAttempts test : retried) {
+            writer.write(test + System.lineSeparator());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write the report to a file
+     * @param path the file to write
+     * @throws IOException on error writing
+     */
+    public void writeTo(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Write the report to a file when the JVM exits - i.e. at the end of the test run
+     * @param path the file to write
+     * @return this for fluent calls
+     */
+    public FlakinessReport writeOnExit(Path path) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                writeTo(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        return this;
+    }
+}
@@ -0,0 +1,76 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A budget of retries shared across many tests - e.g. a whole suite - so that a broken environment,
+ * where every test fails, doesn't multiply the time the suite takes by the number of retries. Share one
+ * budget between {@link RetryTests} rules via a static field. Thread safe.
+ */
+public class RetryBudget {
+    private final double extraFraction;
+    private final long minimumRetries;
+    private final AtomicLong tests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * Construct a budget
+     * @param extraFraction the most retries as a fraction of the tests run - e.g. <code>0.1</code> for
+     *                      at most 10% extra attempts
+     * @param minimumRetries the retries allowed however few tests have run, so that the first tests of
+     *                       the suite can be retried
+     */
+    public RetryBudget(double extraFraction, long minimumRetries) {
+        if (extraFraction < 0 || minimumRetries < 0) {
+            throw new IllegalArgumentException("Budget cannot be negative");
+        }
+        this.extraFraction = extraFraction;
+        this.minimumRetries = minimumRetries;
+    }
+
+    /**
+     * Record that a test has started its first attempt, growing the budget
+     */
+    public void testStarted() {
+        tests.incrementAndGet();
+    }
+
+    /**
+     * Take a retry from the budget, if there is one left
+     * @return true if the retry can go ahead
+     */
+    public boolean tryRetry() {
+        long used;
+        do {
+            used = retries.get();
+            if (used >= getAllowedRetries()) {
+                return false;
+            }
+        } while (!retries.compareAndSet(used, used + 1));
+        return true;
+    }
+
+    /**
+     * How many retries are allowed at the moment
+     * @return the number of retries allowed by the tests run so far
+     */
+    public long getAllowedRetries() {
+        return Math.max(minimumRetries, (long) (tests.get() * extraFraction));
+    }
+
+    /**
+     * How many retries have been used
+     * @return the number of retries taken from the budget
+     */
+    public long getUsedRetries() {
+        return retries.get();
+    }
+
+    /**
+     * How many tests have been run
+     * @return the number of tests started
+     */
+    public long getTests() {
+        return tests.get();
+    }
+}
@@ -3,6 +3,7 @@ package uk.org.webcompere.testgadgets.retry;
 import static uk.org.webcompere.testgadgets.retry.Retryer.repeat;
 import static uk.org.webcompere.testgadgets.retry.Retryer.retry;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.time.Duration;
 import org.junit.rules.MethodRule;
 import org.junit.runners.model.FrameworkMethod;
@@ -10,11 +11,14 @@ import org.junit.runners.model.Statement;
 
 /**
  * JUnit rule that retries tests. Add this to a test class so that each of the test methods
- * will be retried if it fails at first.
+ * will be retried if it fails at first. A {@link RetryBudget} shared between test classes limits the
+ * retries across the whole run, and a {@link FlakinessReport} collects the attempts of each test.
  */
 public class RetryTests implements MethodRule {
     private int retries;
     private Duration gapBetween;
+    private RetryBudget budget;
+    private FlakinessReport report;
 
     /**
      * Add a retry logic around all tests - use {@link DoNotRetry} to mark a test method as not for retrying.
@@ -28,6 +32,28 @@ public class RetryTests implements MethodRule {
         this.gapBetween = gapBetween;
     }
 
+    /**
+     * Fluent setter of a budget of retries, shared with other tests, which each retry must fit within
+     * @param budget the shared budget
+     * @return this
+     */
+    @SuppressFBWarnings("EI2")
+    public RetryTests withBudget(RetryBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    /**
+     * Fluent setter of a report to record the attempts of each test in
+     * @param report the shared report
+     * @return this
+     */
+    @SuppressFBWarnings("EI2")
+    public RetryTests withReport(FlakinessReport report) {
+        this.report = report;
+        return this;
+    }
+
     @Override
     public Statement apply(final Statement base, final FrameworkMethod method, Object target) {
         return new Statement() {
@@ -38,17 +64,31 @@ public class RetryTests implements MethodRule {
                     base.evaluate();
                 } else {
                     // do retries
+                    Retryer.Retries profile = repeat().times(retries).waitBetween(gapBetween);
+                    RetryBudget sharedBudget = budget;
+                    if (sharedBudget != null) {
+                        sharedBudget.testStarted();
+                        profile.retryOn(error -> Retryer.isRecoverable(error) && sharedBudget.tryRetry());
+                    }
+                    FlakinessReport sharedReport = report;
+                    if (sharedReport != null) {
+                        String name = method.getDeclaringClass().getName() + "." + method.getName();
+                        profile.onAttempts(attempts -> sharedReport.record(name, attempts));
+                    }
                     retry(
                             () -> {
                                 try {
                                     base.evaluate();
                                 } catch (Exception e) {
                                     throw new RuntimeException(e.getMessage(), e);
+                                } catch (Error e) {
+                                    // unwrapped, so the retries can tell which errors are worth retrying
+                                    throw e;
                                 } catch (Throwable t) {
                                     throw new RuntimeException(t);
                                 }
                             },
-                            repeat().times(retries).waitBetween(gapBetween));
+                            profile);
                 }
             }
         };
@@ -0,0 +1,39 @@
+package uk.org.webcompere.testgadgets.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void minimumRetriesAreAllowedBeforeAnyTests() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+
+        assertThat(budget.tryRetry()).isTrue();
+        assertThat(budget.tryRetry()).isTrue();
+        assertThat(budget.tryRetry()).isFalse();
+        assertThat(budget.getUsedRetries()).isEqualTo(2);
+    }
+
+    @Test
+    public void budgetGrowsWithTheTests() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        assertThat(budget.tryRetry()).isFalse();
+
+        for (int i = 0; i < 20; i++) {
+            budget.testStarted();
+        }
+
+        assertThat(budget.getAllowedRetries()).isEqualTo(2);
+        assertThat(budget.tryRetry()).isTrue();
+        assertThat(budget.tryRetry()).isTrue();
+        assertThat(budget.tryRetry()).isFalse();
+    }
+
+    @Test
+    public void budgetCannotBeNegative() {
+        assertThatThrownBy(() -> new RetryBudget(-0.1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -3,8 +3,11 @@ package uk.org.webcompere.testgadgets.retry;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.*;
 
+import java.io.StringWriter;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -58,6 +61,91 @@ public class RetryTestsTest {
         }
     }
 
+    // This is run by the test below - do not run it through normal test discovery
+    @Ignore
+    public static class Budgeted {
+        private static final RetryBudget BUDGET = new RetryBudget(0, 1);
+        private static final FlakinessReport REPORT = new FlakinessReport();
+        private static int times = 0;
+
+        @Rule
+        public RetryTests retryTests =
+                new RetryTests(3, Duration.ofMillis(2)).withBudget(BUDGET).withReport(REPORT);
+
+        @Test
+        public void willSucceedSecondTime() {
+            if (times++ < 1) {
+                fail("not going to pass this time");
+            }
+        }
+
+        @Test
+        public void alwaysFails() {
+            throw new RuntimeException("broken environment");
+        }
+    }
+
+    // This is run by the test below - do not run it through normal test discovery
+    @Ignore
+    public static class Fatal {
+        private static final RetryBudget BUDGET = new RetryBudget(0, 10);
+        private static final FlakinessReport REPORT = new FlakinessReport();
+
+        @Rule
+        public RetryTests retryTests =
+                new RetryTests(3, Duration.ofMillis(2)).withBudget(BUDGET).withReport(REPORT);
+
+        @Test
+        public void runsOutOfMemory() {
+            throw new OutOfMemoryError("test ran out of memory");
+        }
+    }
+
+    public static class UseFatalErrorTest {
+        @Test
+        public void fatalErrorsAreNotRetriedAndUseNoBudget() throws Exception {
+            RunNotifier notifier = new RunNotifier();
+            List<Failure> failures = new ArrayList<>();
+            notifier.addListener(new RunListener() {
+                @Override
+                public void testFailure(Failure failure) {
+                    failures.add(failure);
+                }
+            });
+
+            new BlockJUnit4ClassRunner(Fatal.class).run(notifier);
+
+            assertThat(failures).singleElement().satisfies(failure -> assertThat(failure.getException())
+                    .isInstanceOf(OutOfMemoryError.class));
+            assertThat(Fatal.BUDGET.getUsedRetries()).isZero();
+            assertThat(Fatal.REPORT.getTests())
+                    .singleElement()
+                    .extracting(FlakinessReport.TestAttempts::getAttempts)
+                    .isEqualTo(1);
+        }
+    }
+
+    public static class UseBudgetTest {
+        @Test
+        public void retriesStopWhenTheBudgetRunsOut() throws Exception {
+            new BlockJUnit4ClassRunner(Budgeted.class).run(new RunNotifier());
+
+            // whichever test runs first takes the only retry
+            assertThat(Budgeted.BUDGET.getUsedRetries()).isEqualTo(1);
+
+            List<FlakinessReport.TestAttempts> tests = Budgeted.REPORT.getTests();
+            assertThat(tests).hasSize(2);
+            int totalAttempts = tests.stream()
+                    .mapToInt(FlakinessReport.TestAttempts::getAttempts)
+                    .sum();
+            assertThat(totalAttempts).isEqualTo(3);
+
+            StringWriter writer = new StringWriter();
+            Budgeted.REPORT.write(writer);
+            assertThat(writer.toString()).startsWith("Tests: 2, retried: 1");
+        }
+    }
+
     public static class UseRetryRuleTest {
 
         @Test